@@ -0,0 +1,58 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The echo transform of the event loop against the per byte loop it replaced. Neither takes branches that depend
+ * on the letters, so the buffer is not restored between invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AsciiUpperCaseBenchmark {
+
+    @Param({"120", "8192"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean direct;
+
+    private final ByteTransform transform = ByteTransform.asciiUpperCase();
+    private ByteBuffer bb;
+
+    @Setup
+    public void setUp() {
+        var text = "GET /hello?name=world HTTP/1.1 za\u017c\u00f3\u0142\u0107 0123456789 ".getBytes(StandardCharsets.UTF_8);
+        bb = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        while (bb.hasRemaining()) {
+            bb.put(text, 0, Math.min(text.length, bb.remaining()));
+        }
+        bb.flip();
+    }
+
+    @Benchmark
+    public ByteBuffer wordAtATime() {
+        transform.apply(bb);
+        return bb;
+    }
+
+    @Benchmark
+    public ByteBuffer characterToUpperCase() {
+        for (int i = 0; i < bb.limit(); i++) {
+            bb.put(i, (byte) Character.toUpperCase((char) bb.get(i)));
+        }
+        return bb;
+    }
+
+}
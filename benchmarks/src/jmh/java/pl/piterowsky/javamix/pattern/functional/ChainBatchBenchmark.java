@@ -0,0 +1,98 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A million subjects through the three step chain, scores are per subject. Every path runs the same steps, whose
+ * transitions are logged at debug level and disabled here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChainBatchBenchmark {
+
+    private static final int SUBJECTS = 1_000_000;
+
+    private List<ChainOfResponsibilityPattern.Subject> subjects;
+    private ChainOfResponsibilityPattern.ImperativeWay.AbstractStep imperativeChain;
+    private Function<ChainOfResponsibilityPattern.Subject, ChainOfResponsibilityPattern.Subject> functionalChain;
+    private ForkJoinPool singleThread;
+    private ChainBatch<ChainOfResponsibilityPattern.Subject> batch;
+    private ChainBatch<ChainOfResponsibilityPattern.Subject> sequentialBatch;
+
+    @Setup
+    public void setUp() {
+        subjects = Stream.generate(ChainOfResponsibilityPattern.Subject::new).limit(SUBJECTS)
+                .collect(Collectors.toList());
+        imperativeChain = new ChainOfResponsibilityPattern.ImperativeWay.Step1();
+        imperativeChain.andThen(new ChainOfResponsibilityPattern.ImperativeWay.Step2())
+                .andThen(new ChainOfResponsibilityPattern.ImperativeWay.Step3());
+        functionalChain = Function.<ChainOfResponsibilityPattern.Subject>identity()
+                .andThen(ChainOfResponsibilityPattern.FunctionalWay::doStep1)
+                .andThen(ChainOfResponsibilityPattern.FunctionalWay::doStep2)
+                .andThen(ChainOfResponsibilityPattern.FunctionalWay::doStep3);
+        singleThread = new ForkJoinPool(1);
+        batch = new ChainBatch<>(ChainOfResponsibilityPattern.FunctionalWay.TRANSITIONS);
+        sequentialBatch = new ChainBatch<>(ChainOfResponsibilityPattern.FunctionalWay.TRANSITIONS).pool(singleThread);
+    }
+
+    @TearDown
+    public void tearDown() {
+        singleThread.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBJECTS)
+    public ChainOfResponsibilityPattern.Subject imperativeOneByOne() {
+        ChainOfResponsibilityPattern.Subject last = null;
+        for (ChainOfResponsibilityPattern.Subject subject : subjects) {
+            last = imperativeChain.applyTo(subject);
+        }
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBJECTS)
+    public ChainOfResponsibilityPattern.Subject functionalOneByOne() {
+        ChainOfResponsibilityPattern.Subject last = null;
+        for (ChainOfResponsibilityPattern.Subject subject : subjects) {
+            last = functionalChain.apply(subject);
+        }
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBJECTS)
+    public List<ChainOfResponsibilityPattern.Subject> batchOneThread() {
+        return sequentialBatch.applyAll(subjects);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBJECTS)
+    public List<ChainOfResponsibilityPattern.Subject> batchCommonPool() {
+        return batch.applyAll(subjects);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBJECTS)
+    public long batchSpliterator() {
+        return batch.applyAll(subjects.spliterator(), subject -> {
+        });
+    }
+
+}
@@ -0,0 +1,68 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Both chains log every step, logging is configured to WARN so the cost of a disabled log call is included
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChainOfResponsibilityBenchmark {
+
+    private ChainOfResponsibilityPattern.ImperativeWay.AbstractStep imperativeChain;
+    private Function<ChainOfResponsibilityPattern.Subject, ChainOfResponsibilityPattern.Subject> functionalChain;
+    private final ChainOfResponsibilityPattern.Subject subject = new ChainOfResponsibilityPattern.Subject();
+
+    @Setup
+    public void setUp() {
+        imperativeChain = imperativeChain();
+        functionalChain = functionalChain();
+    }
+
+    @Benchmark
+    public ChainOfResponsibilityPattern.Subject imperative() {
+        return imperativeChain.applyTo(subject);
+    }
+
+    @Benchmark
+    public ChainOfResponsibilityPattern.Subject functional() {
+        return functionalChain.apply(subject);
+    }
+
+    @Benchmark
+    public ChainOfResponsibilityPattern.Subject imperativeBuiltPerCall() {
+        return imperativeChain().applyTo(new ChainOfResponsibilityPattern.Subject());
+    }
+
+    @Benchmark
+    public ChainOfResponsibilityPattern.Subject functionalBuiltPerCall() {
+        return functionalChain().apply(new ChainOfResponsibilityPattern.Subject());
+    }
+
+    private static ChainOfResponsibilityPattern.ImperativeWay.AbstractStep imperativeChain() {
+        var chain = new ChainOfResponsibilityPattern.ImperativeWay.Step1();
+        chain.andThen(new ChainOfResponsibilityPattern.ImperativeWay.Step2())
+                .andThen(new ChainOfResponsibilityPattern.ImperativeWay.Step3());
+        return chain;
+    }
+
+    private static Function<ChainOfResponsibilityPattern.Subject, ChainOfResponsibilityPattern.Subject> functionalChain() {
+        UnaryOperator<ChainOfResponsibilityPattern.Subject> initial = UnaryOperator.identity();
+        return initial
+                .andThen(ChainOfResponsibilityPattern.FunctionalWay::doStep1)
+                .andThen(ChainOfResponsibilityPattern.FunctionalWay::doStep2)
+                .andThen(ChainOfResponsibilityPattern.FunctionalWay::doStep3);
+    }
+
+}
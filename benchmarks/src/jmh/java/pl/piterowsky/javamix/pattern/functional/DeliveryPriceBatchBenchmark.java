@@ -0,0 +1,89 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Basic plan delivery prices of ten million items, scores are per item. The BigDecimal path prices one item at a
+ * time, the batches price a column of cents with the same results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class DeliveryPriceBatchBenchmark {
+
+    private static final int ITEMS = 10_000_000;
+
+    private List<StrategyPattern.Item> items;
+    private long[] prices;
+    private long[] results;
+    private ForkJoinPool singleThread;
+    private DeliveryPriceBatch batch;
+    private DeliveryPriceBatch sequentialBatch;
+
+    @Setup
+    public void setUp() {
+        items = new Random(7).longs(ITEMS, 0, 10_000_000)
+                .mapToObj(cents -> new StrategyPattern.Item(1L, BigDecimal.valueOf(cents, 2)))
+                .collect(Collectors.toList());
+        prices = DeliveryPriceBatch.minorUnits(items, 2);
+        results = new long[ITEMS];
+        singleThread = new ForkJoinPool(1);
+        batch = new DeliveryPriceBatch(StrategyPattern.FunctionalWay.Plan.BASIC, 2);
+        sequentialBatch = new DeliveryPriceBatch(StrategyPattern.FunctionalWay.Plan.BASIC, 2).pool(singleThread);
+    }
+
+    @TearDown
+    public void tearDown() {
+        singleThread.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public BigDecimal bigDecimalOneByOne() {
+        BigDecimal last = null;
+        for (StrategyPattern.Item item : items) {
+            last = StrategyPattern.FunctionalWay.Plan.BASIC.deliveryPrice.apply(item);
+        }
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public long[] exactOneThread() {
+        sequentialBatch.price(prices, results);
+        return results;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public long[] exactCommonPool() {
+        batch.price(prices, results);
+        return results;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public long[] roundedToCentsCommonPool() {
+        batch.price(prices, results, 2, RoundingMode.HALF_EVEN);
+        return results;
+    }
+
+}
@@ -0,0 +1,57 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The imperative and functional factories allocate a vehicle per call, the registry hands out shared ones
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FactoryMethodBenchmark {
+
+    @Param({"CAR", "TRUCK", "BUS"})
+    public String type;
+
+    private FactoryMethodPattern.ImperativeWay.VehicleType imperativeType;
+    private FactoryMethodPattern.FunctionalWay.VehicleType functionalType;
+    private String key;
+    private final VehicleRegistry registry = new VehicleRegistry();
+
+    @Setup
+    public void setUp() {
+        imperativeType = FactoryMethodPattern.ImperativeWay.VehicleType.valueOf(type);
+        functionalType = FactoryMethodPattern.FunctionalWay.VehicleType.valueOf(type);
+        key = type.toLowerCase();
+    }
+
+    @Benchmark
+    public FactoryMethodPattern.Vehicle imperative() {
+        return FactoryMethodPattern.ImperativeWay.getInstance(imperativeType, FactoryMethodPattern.VehicleColor.GREEN);
+    }
+
+    @Benchmark
+    public FactoryMethodPattern.Vehicle functional() {
+        return functionalType.factory.apply(FactoryMethodPattern.VehicleColor.GREEN);
+    }
+
+    @Benchmark
+    public FactoryMethodPattern.Vehicle registry() {
+        return registry.get(functionalType, FactoryMethodPattern.VehicleColor.GREEN);
+    }
+
+    @Benchmark
+    public FactoryMethodPattern.Vehicle registryByKey() {
+        return registry.get(key, FactoryMethodPattern.VehicleColor.GREEN);
+    }
+
+}
@@ -0,0 +1,35 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Basic plan delivery price of a single item
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StrategyBenchmark {
+
+    private final StrategyPattern.Item item = new StrategyPattern.Item(1L, BigDecimal.valueOf(120.99));
+    private final StrategyPattern.DeliveryPriceCalculator calculator =
+            new StrategyPattern.ImperativeWay.BasicDeliveryPriceCalculator();
+
+    @Benchmark
+    public BigDecimal imperative() {
+        return calculator.priceFor(item);
+    }
+
+    @Benchmark
+    public BigDecimal functional() {
+        return StrategyPattern.FunctionalWay.Plan.BASIC.deliveryPrice.apply(item);
+    }
+
+}
@@ -0,0 +1,122 @@
+package pl.piterowsky.javamix.simple.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the kind of objects routes return, the gc profiler shows what is left allocated per response.
+ * {@link #jsonParser} is the reflective converter JsonSerializer replaced, run on the flat bean it can handle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonSerializerBenchmark {
+
+    private SimplePojo pojo;
+    private Order order;
+    private List<Order> orders;
+    private Map<String, Object> map;
+
+    @Setup
+    public void setUp() {
+        pojo = new SimplePojo();
+        pojo.setHello("Hello World");
+        pojo.setAge(12);
+        order = order(1);
+        orders = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            orders.add(order(i));
+        }
+        map = Map.of("hello", "Hello World", "age", 12, "tags", List.of("a", "b", "c"));
+    }
+
+    @Benchmark
+    public int serializePojo() {
+        try (var out = JsonSerializer.serialize(pojo)) {
+            return out.size();
+        }
+    }
+
+    @Benchmark
+    public String jsonParser() throws IllegalAccessException {
+        return JsonParser.convertToJson(pojo);
+    }
+
+    @Benchmark
+    public int serializeBean() {
+        try (var out = JsonSerializer.serialize(order)) {
+            return out.size();
+        }
+    }
+
+    @Benchmark
+    public int serializeList() {
+        try (var out = JsonSerializer.serialize(orders)) {
+            return out.size();
+        }
+    }
+
+    @Benchmark
+    public int serializeMap() {
+        try (var out = JsonSerializer.serialize(map)) {
+            return out.size();
+        }
+    }
+
+    /**
+     * The copy into a String is what handlers pay for when they need the JSON as text
+     */
+    @Benchmark
+    public String toJson() {
+        return JsonSerializer.toJson(order);
+    }
+
+    private static Order order(int id) {
+        var lines = List.of(new Line("SKU-" + id, 2, new BigDecimal("19.99")), new Line("SKU-X", 1, new BigDecimal("5.00")));
+        return new Order(id, "Customer \"" + id + '"', HttpMethod.POST, true, lines);
+    }
+
+    static final class Order {
+
+        private final long id;
+        private final String customer;
+        private final HttpMethod method;
+        private final boolean paid;
+        private final List<Line> lines;
+
+        Order(long id, String customer, HttpMethod method, boolean paid, List<Line> lines) {
+            this.id = id;
+            this.customer = customer;
+            this.method = method;
+            this.paid = paid;
+            this.lines = lines;
+        }
+
+    }
+
+    static final class Line {
+
+        private final String sku;
+        private final int quantity;
+        private final BigDecimal price;
+
+        Line(String sku, int quantity, BigDecimal price) {
+            this.sku = sku;
+            this.quantity = quantity;
+            this.price = price;
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+package pl.piterowsky.javamix.simple.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query string handling of a request, {@link #splitFirstPair} is the split based parsing RequestParams replaced
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestParamsBenchmark {
+
+    @Param({"id=42", "id=42&name=J%C3%B3zef+Nowak&sort=asc&page=3&size=50&filter=a%2Cb%2Cc"})
+    public String query;
+
+    private final RequestParams reused = new RequestParams();
+    private String uri;
+
+    @Setup
+    public void setUp() {
+        uri = "/users?" + query;
+    }
+
+    @Benchmark
+    public String parseAndGet() {
+        return RequestParams.of(query).get("id");
+    }
+
+    /**
+     * Same as the server does it, the pair index of the previous request is kept
+     */
+    @Benchmark
+    public String reparseAndGet() {
+        reused.parse(query);
+        return reused.get("id");
+    }
+
+    @Benchmark
+    public int parseAndDecodeAll() {
+        int length = 0;
+        for (Map.Entry<String, String> entry : RequestParams.of(query).entrySet()) {
+            length += entry.getValue().length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public String splitFirstPair() {
+        return splitFirstPair(uri).get("id");
+    }
+
+    private static Map<String, String> splitFirstPair(String uri) {
+        if (uri.contains("?")) {
+            var paramsStr = uri.split("\\?")[1];
+            if (paramsStr.contains("=")) {
+                var paramsArray = paramsStr.split("=");
+                return paramsArray.length >= 2
+                        ? Collections.singletonMap(paramsArray[0], paramsArray[1])
+                        : Collections.emptyMap();
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+}
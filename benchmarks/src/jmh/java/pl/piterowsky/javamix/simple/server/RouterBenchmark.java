@@ -0,0 +1,63 @@
+package pl.piterowsky.javamix.simple.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Route matching with a captured segment, spread over four methods and three API versions. Every invocation
+ * matches the next path of the table, so the trie is walked along a different branch each time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouterBenchmark {
+
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+
+    @Param({"10", "1000"})
+    public int routes;
+
+    private Router<Integer> router;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        router = new Router<>();
+        paths = new String[routes];
+        for (int i = 0; i < routes; i++) {
+            router.add(METHODS[i % 4], "/api/v" + (i % 3) + "/resource" + i + "/{id}/items/" + (i % 7), i);
+            paths[i] = "/api/v" + (i % 3) + "/resource" + i + "/" + i + "/items/" + (i % 7);
+        }
+    }
+
+    @Benchmark
+    public Integer match() {
+        int i = next();
+        return router.match(METHODS[i % 4], paths[i]).handler();
+    }
+
+    /**
+     * Right path with a method it has no route for, which backtracks before answering 405
+     */
+    @Benchmark
+    public boolean matchWrongMethod() {
+        int i = next();
+        return router.match(METHODS[(i + 1) % 4], paths[i]).isMethodNotAllowed();
+    }
+
+    private int next() {
+        int i = next;
+        next = i + 1 == paths.length ? 0 : i + 1;
+        return i;
+    }
+
+}
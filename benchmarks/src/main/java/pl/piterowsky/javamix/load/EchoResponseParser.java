@@ -0,0 +1,37 @@
+package pl.piterowsky.javamix.load;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The echo has no framing, the response is complete once as many bytes came back as were sent
+ */
+final class EchoResponseParser implements ResponseParser {
+
+    private final byte[] expected;
+    private int received;
+    private boolean mismatch;
+
+    EchoResponseParser(byte[] expected) {
+        this.expected = expected;
+    }
+
+    @Override
+    public boolean parse(ByteBuffer in) {
+        while (in.hasRemaining() && received < expected.length) {
+            mismatch |= in.get() != expected[received++];
+        }
+        return received == expected.length;
+    }
+
+    @Override
+    public boolean isError() {
+        return mismatch;
+    }
+
+    @Override
+    public void reset() {
+        received = 0;
+        mismatch = false;
+    }
+
+}
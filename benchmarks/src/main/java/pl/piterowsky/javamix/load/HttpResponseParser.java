@@ -0,0 +1,210 @@
+package pl.piterowsky.javamix.load;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental HTTP/1.1 response parser, the body is skipped by its Content-Length or chunk by chunk.
+ * Responses delimited by closing the connection are not supported, the servers under test never send them.
+ */
+final class HttpResponseParser implements ResponseParser {
+
+    private static final int MAX_HEAD_BYTES = 16 * 1024;
+    private static final int MAX_LINE_BYTES = 1024;
+
+    private enum State {
+        HEAD, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILER, DONE
+    }
+
+    private final boolean headRequest;
+    private final byte[] head = new byte[MAX_HEAD_BYTES];
+    private State state = State.HEAD;
+    private int headLength;
+    private long remaining;
+    private long chunkSize;
+    private int chunkDigits;
+    private boolean chunkExtension;
+    private int lineLength;
+    private int status;
+    private boolean closing;
+
+    HttpResponseParser(boolean headRequest) {
+        this.headRequest = headRequest;
+    }
+
+    @Override
+    public boolean parse(ByteBuffer in) {
+        while (state != State.DONE && in.hasRemaining()) {
+            switch (state) {
+                case HEAD:
+                    readHead(in);
+                    break;
+                case BODY:
+                    skipBody(in, State.DONE);
+                    break;
+                case CHUNK_SIZE:
+                    readChunkSize(in.get());
+                    break;
+                case CHUNK_DATA:
+                    skipBody(in, State.CHUNK_END);
+                    break;
+                case CHUNK_END:
+                    if (in.get() == '\n') {
+                        state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILER:
+                    readTrailer(in.get());
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected parser state " + state);
+            }
+        }
+        return state == State.DONE;
+    }
+
+    @Override
+    public boolean isError() {
+        return status >= 400;
+    }
+
+    @Override
+    public boolean isClosing() {
+        return closing;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    @Override
+    public void reset() {
+        state = State.HEAD;
+        headLength = 0;
+        remaining = 0;
+        chunkSize = 0;
+        chunkDigits = 0;
+        chunkExtension = false;
+        lineLength = 0;
+        status = 0;
+        closing = false;
+    }
+
+    private void readHead(ByteBuffer in) {
+        while (in.hasRemaining()) {
+            if (headLength == head.length) {
+                throw new IllegalStateException("Response head longer than " + MAX_HEAD_BYTES + " bytes");
+            }
+            byte b = in.get();
+            head[headLength++] = b;
+            if (b == '\n' && headLength >= 4 && head[headLength - 2] == '\r'
+                    && head[headLength - 3] == '\n' && head[headLength - 4] == '\r') {
+                parseHead(new String(head, 0, headLength - 4, StandardCharsets.ISO_8859_1));
+                return;
+            }
+        }
+    }
+
+    private void parseHead(String text) {
+        var lines = text.split("\r\n");
+        var statusLine = lines[0];
+        if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+            throw new IllegalStateException("Malformed status line: " + statusLine);
+        }
+        try {
+            status = Integer.parseInt(statusLine.substring(9, 12));
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Malformed status line: " + statusLine);
+        }
+        long contentLength = -1;
+        boolean chunked = false;
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalStateException("Malformed header line: " + lines[i]);
+            }
+            var name = lines[i].substring(0, colon).trim();
+            var value = lines[i].substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                contentLength = contentLength(value);
+            } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                chunked = value.equalsIgnoreCase("chunked");
+            } else if (name.equalsIgnoreCase("Connection")) {
+                closing = value.equalsIgnoreCase("close");
+            }
+        }
+        if (status < 200 && status >= 100) {
+            // Interim response, the final one follows on the same connection
+            headLength = 0;
+            return;
+        }
+        if (headRequest || status == 204 || status == 304) {
+            state = State.DONE;
+        } else if (chunked) {
+            state = State.CHUNK_SIZE;
+        } else if (contentLength >= 0) {
+            remaining = contentLength;
+            state = contentLength == 0 ? State.DONE : State.BODY;
+        } else {
+            throw new IllegalStateException("Response without Content-Length or chunked encoding");
+        }
+    }
+
+    private static long contentLength(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Malformed Content-Length: " + value);
+        }
+    }
+
+    private void skipBody(ByteBuffer in, State next) {
+        int skipped = (int) Math.min(in.remaining(), remaining);
+        in.position(in.position() + skipped);
+        remaining -= skipped;
+        if (remaining == 0) {
+            state = next;
+        }
+    }
+
+    private void readChunkSize(byte b) {
+        if (b == '\n') {
+            if (chunkDigits == 0) {
+                throw new IllegalStateException("Missing chunk size");
+            }
+            // The last chunk is followed by optional trailers and an empty line
+            state = chunkSize == 0 ? State.TRAILER : State.CHUNK_DATA;
+            remaining = chunkSize;
+            chunkSize = 0;
+            chunkDigits = 0;
+            chunkExtension = false;
+            lineLength = 0;
+            return;
+        }
+        if (++lineLength > MAX_LINE_BYTES) {
+            throw new IllegalStateException("Chunk size line longer than " + MAX_LINE_BYTES + " bytes");
+        }
+        if (chunkExtension || b == '\r') {
+            return;
+        }
+        if (b == ';' || b == ' ' || b == '\t') {
+            chunkExtension = true;
+            return;
+        }
+        int digit = Character.digit(b, 16);
+        if (digit < 0 || ++chunkDigits > 15) {
+            throw new IllegalStateException("Malformed chunk size");
+        }
+        chunkSize = chunkSize * 16 + digit;
+    }
+
+    private void readTrailer(byte b) {
+        if (b == '\n') {
+            state = lineLength == 0 ? State.DONE : State.TRAILER;
+            lineLength = 0;
+        } else if (b != '\r') {
+            lineLength++;
+        }
+    }
+
+}
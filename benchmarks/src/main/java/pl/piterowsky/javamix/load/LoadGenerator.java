@@ -0,0 +1,303 @@
+package pl.piterowsky.javamix.load;
+
+import pl.piterowsky.javamix.metrics.Histogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Open loop load generator for SimpleServer and the NonBlockingIO echo. Every connection sends its share of the
+ * rate on a fixed schedule and has one request in flight at a time. Latency is measured from when a request was
+ * due, not from when it could be sent, so requests held up behind a slow response are not missing from the
+ * percentiles (coordinated omission).
+ * <p>
+ * Runs on a single thread with one selector, start it with {@code ./gradlew :benchmarks:loadTest -Pload.rate=5000}.
+ */
+public final class LoadGenerator {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long DRAIN_NANOS = 5 * NANOS_PER_SECOND;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final LoadOptions options;
+    private final InetSocketAddress address;
+    private final byte[] request;
+    private final Histogram latency = new Histogram();
+    private final Histogram serviceTime = new Histogram();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final List<Client> clients = new ArrayList<>();
+    private Selector selector;
+    private long start;
+    private long warmupEnd;
+    private long end;
+    private long completed;
+    private long errors;
+    private long reconnects;
+    private String firstFailure;
+
+    public LoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.address = new InetSocketAddress(options.getHost(), options.effectivePort());
+        this.request = options.getProtocol().request(options);
+    }
+
+    /**
+     * Comma separated {@code load.connections} run one after another, which shows how latency scales with them.
+     * Exits with 1 when {@code load.maxP99Millis} is set and a run had a higher p99.
+     */
+    public static void main(String[] args) throws IOException {
+        var options = LoadOptions.fromSystemProperties();
+        var maxP99Millis = System.getProperty("load.maxP99Millis");
+        double maxP99Nanos = maxP99Millis != null
+                ? Double.parseDouble(maxP99Millis) * NANOS_PER_MILLI
+                : Double.MAX_VALUE;
+        boolean exceeded = false;
+        for (String connections : System.getProperty("load.connections", "16").split(",")) {
+            options.connections(Integer.parseInt(connections.trim()));
+            var report = new LoadGenerator(options).run();
+            System.out.print(report.summary());
+            if (report.getLatency().getP99() > maxP99Nanos) {
+                System.out.println("  p99 above the limit of " + maxP99Millis + " ms");
+                exceeded = true;
+            }
+        }
+        if (exceeded) {
+            System.exit(1);
+        }
+    }
+
+    public LoadReport run() throws IOException {
+        selector = Selector.open();
+        try {
+            for (int i = 0; i < options.getConnections(); i++) {
+                var client = new Client(i, options.getProtocol().parser(options), ByteBuffer.wrap(request));
+                connect(client);
+                clients.add(client);
+            }
+            start = System.nanoTime();
+            warmupEnd = start + options.getWarmup().toNanos();
+            end = warmupEnd + options.getDuration().toNanos();
+            loop();
+            return new LoadReport(options.getProtocol(), address.getHostString() + ':' + address.getPort(),
+                    options.getConnections(), options.getRate(), options.getDuration().getSeconds(), completed,
+                    errors, incomplete(), reconnects, firstFailure, latency.snapshot(), serviceTime.snapshot());
+        } finally {
+            for (Client client : clients) {
+                client.channel.close();
+            }
+            selector.close();
+        }
+    }
+
+    private void loop() throws IOException {
+        long deadline = end + DRAIN_NANOS;
+        while (true) {
+            long now = System.nanoTime();
+            long wakeUp = deadline;
+            boolean pending = false;
+            for (Client client : clients) {
+                if (client.inFlight) {
+                    pending = true;
+                    continue;
+                }
+                long due = dueOf(client, client.sequence);
+                if (due >= end) {
+                    continue;
+                }
+                pending = true;
+                if (due <= now) {
+                    send(client, now);
+                } else {
+                    wakeUp = Math.min(wakeUp, due);
+                }
+            }
+            if (!pending || now >= deadline) {
+                return;
+            }
+            long timeout = wakeUp - now;
+            if (timeout >= NANOS_PER_MILLI) {
+                // Rounded down, the rest of the wait is spent in the branch below
+                selector.select(timeout / NANOS_PER_MILLI);
+            } else {
+                selector.selectNow();
+                if (timeout > 0) {
+                    // Less than a millisecond to go, polling keeps sends on time while yielding to the server
+                    Thread.yield();
+                }
+            }
+            for (SelectionKey key : selector.selectedKeys()) {
+                handle((Client) key.attachment(), key);
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+    /**
+     * The schedule is staggered so every connection sends at the same rate without all of them sending at once
+     */
+    private long dueOf(Client client, long sequence) {
+        return start + (client.index + sequence * options.getConnections()) * NANOS_PER_SECOND / options.getRate();
+    }
+
+    private void send(Client client, long now) throws IOException {
+        client.inFlight = true;
+        client.sentAt = now;
+        client.out.clear();
+        try {
+            client.channel.write(client.out);
+        } catch (IOException e) {
+            fail(client, e.getMessage());
+            return;
+        }
+        if (client.out.hasRemaining()) {
+            client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void handle(Client client, SelectionKey key) throws IOException {
+        try {
+            if (key.isValid() && key.isWritable()) {
+                client.channel.write(client.out);
+                if (!client.out.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(client);
+            }
+        } catch (IOException e) {
+            fail(client, e.getMessage());
+        }
+    }
+
+    private void read(Client client) throws IOException {
+        readBuffer.clear();
+        int read = client.channel.read(readBuffer);
+        if (read < 0) {
+            fail(client, "Connection closed by the server");
+            return;
+        }
+        readBuffer.flip();
+        if (!client.inFlight) {
+            if (readBuffer.hasRemaining()) {
+                fail(client, "Unexpected bytes while no request was sent");
+            }
+            return;
+        }
+        boolean complete;
+        try {
+            complete = client.parser.parse(readBuffer);
+            if (complete && readBuffer.hasRemaining()) {
+                throw new IllegalStateException("Bytes after the end of the response");
+            }
+        } catch (IllegalStateException e) {
+            fail(client, e.getMessage());
+            return;
+        }
+        if (complete) {
+            complete(client, System.nanoTime());
+        }
+    }
+
+    private void complete(Client client, long now) throws IOException {
+        long due = dueOf(client, client.sequence);
+        if (due >= warmupEnd) {
+            latency.record(now - due);
+            serviceTime.record(now - client.sentAt);
+            completed++;
+            if (client.parser.isError()) {
+                errors++;
+            }
+        }
+        boolean closing = client.parser.isClosing();
+        client.parser.reset();
+        client.inFlight = false;
+        client.sequence++;
+        if (closing) {
+            reconnect(client);
+        }
+    }
+
+    /**
+     * The request in flight counts as failed and the connection is replaced, the schedule goes on unchanged
+     */
+    private void fail(Client client, String reason) throws IOException {
+        if (firstFailure == null) {
+            firstFailure = reason;
+        }
+        if (client.inFlight && dueOf(client, client.sequence) >= warmupEnd) {
+            errors++;
+        }
+        if (client.inFlight) {
+            client.sequence++;
+        }
+        client.inFlight = false;
+        client.parser.reset();
+        reconnect(client);
+    }
+
+    private void reconnect(Client client) throws IOException {
+        client.key.cancel();
+        client.channel.close();
+        // Blocking on localhost takes well under a millisecond and only happens after a failure or a close
+        connect(client);
+        reconnects++;
+    }
+
+    private void connect(Client client) throws IOException {
+        var channel = SocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(address);
+            channel.configureBlocking(false);
+            client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        } catch (IOException e) {
+            channel.close();
+            throw new IOException("Could not connect to " + address + ", is the server running?", e);
+        }
+        client.channel = channel;
+    }
+
+    /**
+     * Requests due within the measured window which never got an answer
+     */
+    private long incomplete() {
+        long incomplete = 0;
+        for (Client client : clients) {
+            for (long sequence = client.sequence; dueOf(client, sequence) < end; sequence++) {
+                if (dueOf(client, sequence) >= warmupEnd) {
+                    incomplete++;
+                }
+            }
+        }
+        return incomplete;
+    }
+
+    private static final class Client {
+
+        final int index;
+        final ResponseParser parser;
+        final ByteBuffer out;
+        SocketChannel channel;
+        SelectionKey key;
+        long sequence;
+        long sentAt;
+        boolean inFlight;
+
+        Client(int index, ResponseParser parser, ByteBuffer out) {
+            this.index = index;
+            this.parser = parser;
+            this.out = out;
+        }
+
+    }
+
+}
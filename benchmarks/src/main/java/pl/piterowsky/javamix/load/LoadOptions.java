@@ -0,0 +1,135 @@
+package pl.piterowsky.javamix.load;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Settings of one {@link LoadGenerator} run, the rate is the total over all connections
+ */
+@Getter
+public class LoadOptions {
+
+    private Protocol protocol = Protocol.HTTP;
+    private String host = "localhost";
+    private int port = -1;
+    private int connections = 16;
+    private int rate = 1000;
+    private Duration duration = Duration.ofSeconds(30);
+    private Duration warmup = Duration.ofSeconds(5);
+    private String method = "GET";
+    private String path = "/hello";
+    private int payloadBytes = -1;
+
+    /**
+     * Reads the {@code load.*} system properties, anything not set keeps its default
+     */
+    public static LoadOptions fromSystemProperties() {
+        var options = new LoadOptions();
+        var protocol = System.getProperty("load.protocol");
+        if (protocol != null) {
+            options.protocol(Protocol.valueOf(protocol.toUpperCase()));
+        }
+        options.host(System.getProperty("load.host", options.host));
+        options.port(Integer.getInteger("load.port", options.port));
+        options.rate(Integer.getInteger("load.rate", options.rate));
+        options.duration(Duration.ofSeconds(Long.getLong("load.seconds", options.duration.getSeconds())));
+        options.warmup(Duration.ofSeconds(Long.getLong("load.warmupSeconds", options.warmup.getSeconds())));
+        options.method(System.getProperty("load.method", options.method));
+        options.path(System.getProperty("load.path", options.path));
+        options.payloadBytes(Integer.getInteger("load.payloadBytes", options.payloadBytes));
+        return options;
+    }
+
+    public LoadOptions protocol(Protocol protocol) {
+        this.protocol = protocol;
+        return this;
+    }
+
+    public LoadOptions host(String host) {
+        this.host = host;
+        return this;
+    }
+
+    /**
+     * -1 picks the port the server of the protocol listens on by default
+     */
+    public LoadOptions port(int port) {
+        if (port < -1 || port > 0xFFFF) {
+            throw new IllegalArgumentException("Port out of range: " + port);
+        }
+        this.port = port;
+        return this;
+    }
+
+    public LoadOptions connections(int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("At least one connection is required, got " + connections);
+        }
+        this.connections = connections;
+        return this;
+    }
+
+    /**
+     * Requests per second over all connections, they are sent on schedule whether earlier ones were answered or not
+     */
+    public LoadOptions rate(int rate) {
+        if (rate < 1) {
+            throw new IllegalArgumentException("Rate must be positive, got " + rate);
+        }
+        this.rate = rate;
+        return this;
+    }
+
+    public LoadOptions duration(Duration duration) {
+        if (duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("Duration must be positive, got " + duration);
+        }
+        this.duration = duration;
+        return this;
+    }
+
+    /**
+     * Requests scheduled before the warm-up ends are sent but left out of the report
+     */
+    public LoadOptions warmup(Duration warmup) {
+        if (warmup.isNegative()) {
+            throw new IllegalArgumentException("Warm-up cannot be negative, got " + warmup);
+        }
+        this.warmup = warmup;
+        return this;
+    }
+
+    public LoadOptions method(String method) {
+        this.method = method;
+        return this;
+    }
+
+    public LoadOptions path(String path) {
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("Path must start with a slash, got " + path);
+        }
+        this.path = path;
+        return this;
+    }
+
+    /**
+     * Bytes echoed per request, or the HTTP request body. -1 picks the default of the protocol.
+     */
+    public LoadOptions payloadBytes(int payloadBytes) {
+        if (payloadBytes < -1) {
+            throw new IllegalArgumentException("Payload size cannot be negative, got " + payloadBytes);
+        }
+        this.payloadBytes = payloadBytes;
+        return this;
+    }
+
+    int effectivePort() {
+        return port >= 0 ? port : protocol.getDefaultPort();
+    }
+
+    int effectivePayloadBytes() {
+        return payloadBytes >= 0 ? payloadBytes : protocol.getDefaultPayloadBytes();
+    }
+
+}
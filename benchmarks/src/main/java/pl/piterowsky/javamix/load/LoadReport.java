@@ -0,0 +1,61 @@
+package pl.piterowsky.javamix.load;
+
+import lombok.Value;
+import pl.piterowsky.javamix.metrics.HistogramSnapshot;
+
+import java.util.Locale;
+
+/**
+ * Outcome of one run, latencies are in nanoseconds and cover requests scheduled after the warm-up
+ */
+@Value
+public class LoadReport {
+
+    Protocol protocol;
+    String target;
+    int connections;
+    int rate;
+    long seconds;
+    long completed;
+    long errors;
+    long incomplete;
+    long reconnects;
+    String firstFailure;
+    /**
+     * From the moment the request was due to be sent, so a stalled server is charged for every request it delayed
+     */
+    HistogramSnapshot latency;
+    /**
+     * From the moment the request was actually sent, what a closed loop client would have reported
+     */
+    HistogramSnapshot serviceTime;
+
+    public double getThroughput() {
+        return (double) completed / seconds;
+    }
+
+    public String summary() {
+        var summary = new StringBuilder(512);
+        summary.append(String.format(Locale.ROOT, "%s %s, %d connections at %d req/s for %d s%n", protocol, target,
+                connections, rate, seconds));
+        summary.append(String.format(Locale.ROOT, "  completed %d (%.1f req/s), errors %d, incomplete %d, "
+                + "reconnects %d%n", completed, getThroughput(), errors, incomplete, reconnects));
+        if (firstFailure != null) {
+            summary.append("  first failure: ").append(firstFailure).append(System.lineSeparator());
+        }
+        append(summary, "latency", latency);
+        append(summary, "service time", serviceTime);
+        return summary.toString();
+    }
+
+    private static void append(StringBuilder summary, String name, HistogramSnapshot snapshot) {
+        summary.append(String.format(Locale.ROOT, "  %-12s p50 %9.3f ms  p99 %9.3f ms  p99.9 %9.3f ms  max %9.3f ms%n",
+                name, millis(snapshot.getP50()), millis(snapshot.getP99()), millis(snapshot.getP999()),
+                millis(snapshot.getMax())));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+}
@@ -0,0 +1,92 @@
+package pl.piterowsky.javamix.load;
+
+import pl.piterowsky.javamix.non.blocking.io.ByteTransform;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * What the generator sends and how it knows the answer is complete
+ */
+public enum Protocol {
+
+    /**
+     * Keep-alive HTTP/1.1 requests, SimpleServer listens on 8080
+     */
+    HTTP(8080, 0) {
+        @Override
+        byte[] request(LoadOptions options) {
+            int payloadBytes = options.effectivePayloadBytes();
+            var head = new StringBuilder(128).append(options.getMethod()).append(' ').append(options.getPath())
+                    .append(" HTTP/1.1\r\nHost: ").append(options.getHost()).append(':').append(options.effectivePort())
+                    .append("\r\n");
+            if (payloadBytes > 0) {
+                head.append("Content-Type: application/octet-stream\r\nContent-Length: ").append(payloadBytes)
+                        .append("\r\n");
+            }
+            var headBytes = head.append("\r\n").toString().getBytes(StandardCharsets.US_ASCII);
+            var request = new byte[headBytes.length + payloadBytes];
+            System.arraycopy(headBytes, 0, request, 0, headBytes.length);
+            System.arraycopy(payload(payloadBytes), 0, request, headBytes.length, payloadBytes);
+            return request;
+        }
+
+        @Override
+        ResponseParser parser(LoadOptions options) {
+            return new HttpResponseParser(options.getMethod().equals("HEAD"));
+        }
+    },
+
+    /**
+     * Raw bytes echoed upper cased by the default NonBlockingIO handler on 8081
+     */
+    ECHO(8081, 64) {
+        @Override
+        byte[] request(LoadOptions options) {
+            int payloadBytes = options.effectivePayloadBytes();
+            if (payloadBytes == 0) {
+                throw new IllegalArgumentException("Echo needs at least one byte to send");
+            }
+            return payload(payloadBytes);
+        }
+
+        @Override
+        ResponseParser parser(LoadOptions options) {
+            var expected = ByteBuffer.wrap(request(options));
+            ByteTransform.asciiUpperCase().apply(expected);
+            return new EchoResponseParser(expected.array());
+        }
+    };
+
+    private final int defaultPort;
+    private final int defaultPayloadBytes;
+
+    Protocol(int defaultPort, int defaultPayloadBytes) {
+        this.defaultPort = defaultPort;
+        this.defaultPayloadBytes = defaultPayloadBytes;
+    }
+
+    public int getDefaultPort() {
+        return defaultPort;
+    }
+
+    public int getDefaultPayloadBytes() {
+        return defaultPayloadBytes;
+    }
+
+    abstract byte[] request(LoadOptions options);
+
+    /**
+     * One parser per connection, it is reset after every response
+     */
+    abstract ResponseParser parser(LoadOptions options);
+
+    private static byte[] payload(int length) {
+        var payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) ('a' + i % 26);
+        }
+        return payload;
+    }
+
+}
@@ -0,0 +1,32 @@
+package pl.piterowsky.javamix.load;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the end of one response in the bytes read from a connection
+ */
+interface ResponseParser {
+
+    /**
+     * Consumes bytes up to the end of the response, anything after it is left in {@code in}
+     *
+     * @return true once the response is complete
+     * @throws IllegalStateException when the bytes cannot be a valid response
+     */
+    boolean parse(ByteBuffer in);
+
+    /**
+     * Whether the complete response counts as failed, like a 5xx status or an echo not matching the request
+     */
+    boolean isError();
+
+    /**
+     * Whether the server is going to close the connection after the complete response
+     */
+    default boolean isClosing() {
+        return false;
+    }
+
+    void reset();
+
+}
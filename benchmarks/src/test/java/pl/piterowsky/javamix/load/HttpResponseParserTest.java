@@ -0,0 +1,77 @@
+package pl.piterowsky.javamix.load;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpResponseParserTest {
+
+    @Test
+    void contentLengthResponseSplitAcrossReads() {
+        var parser = new HttpResponseParser(false);
+
+        assertFalse(parser.parse(ascii("HTTP/1.1 200 OK\r\nContent-Le")));
+        assertFalse(parser.parse(ascii("ngth: 5\r\n\r\nab")));
+        var rest = ascii("cde");
+        assertTrue(parser.parse(rest));
+
+        assertFalse(rest.hasRemaining());
+        assertEquals(200, parser.getStatus());
+        assertFalse(parser.isError());
+        assertFalse(parser.isClosing());
+    }
+
+    @Test
+    void chunkedResponseEndsAfterTheTrailers() {
+        var parser = new HttpResponseParser(false);
+        var in = ascii("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5;ext=abc\r\nhello\r\n1A\r\nabcdefghijklmnopqrstuvwxyz\r\n0\r\nX-Trailer: 1\r\n\r\nHTTP/1.1");
+
+        assertTrue(parser.parse(in));
+        assertEquals("HTTP/1.1", StandardCharsets.US_ASCII.decode(in).toString());
+    }
+
+    @Test
+    void interimAndBodilessResponses() {
+        var parser = new HttpResponseParser(false);
+        assertTrue(parser.parse(ascii("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 204 No Content\r\n\r\n")));
+        assertEquals(204, parser.getStatus());
+
+        var head = new HttpResponseParser(true);
+        assertTrue(head.parse(ascii("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n")));
+    }
+
+    @Test
+    void errorStatusAndCloseAreReported() {
+        var parser = new HttpResponseParser(false);
+        assertTrue(parser.parse(ascii("HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\n"
+                + "Connection: close\r\n\r\n")));
+        assertTrue(parser.isError());
+        assertTrue(parser.isClosing());
+
+        parser.reset();
+        assertFalse(parser.isClosing());
+        assertTrue(parser.parse(ascii("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n")));
+        assertFalse(parser.isError());
+    }
+
+    @Test
+    void malformedResponsesAreRejected() {
+        assertThrows(IllegalStateException.class, () -> new HttpResponseParser(false).parse(ascii("SSH-2.0\r\n\r\n")));
+        assertThrows(IllegalStateException.class,
+                () -> new HttpResponseParser(false).parse(ascii("HTTP/1.1 200 OK\r\n\r\n")));
+        assertThrows(IllegalStateException.class, () -> new HttpResponseParser(false)
+                .parse(ascii("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n")));
+    }
+
+    private static ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+}
@@ -1,21 +1,39 @@
 package pl.piterowsky.javamix;
 
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import pl.piterowsky.javamix.non.blocking.io.NonBlockingIO;
 
+import java.io.IOException;
+
+@Log4j2
 @SpringBootApplication
-public class JavaMixApplication implements CommandLineRunner {
+public class JavaMixApplication implements CommandLineRunner, DisposableBean {
+
+    private final NonBlockingIO nonBlockingIO = new NonBlockingIO();
 
     public static void main(String[] args) {
         SpringApplication.run(JavaMixApplication.class, args);
     }
 
     @Override
-    public void run(String... args) throws Exception {
-        var nonBlockingIO = new NonBlockingIO();
-        nonBlockingIO.start();
+    public void run(String... args) {
+        // start() blocks on the accept loop, keep it away from the main thread
+        new Thread(() -> {
+            try {
+                nonBlockingIO.start();
+            } catch (IOException e) {
+                log.error("Non blocking IO stopped", e);
+            }
+        }, "nio-acceptor").start();
+    }
+
+    @Override
+    public void destroy() {
+        nonBlockingIO.stop();
     }
 
 }
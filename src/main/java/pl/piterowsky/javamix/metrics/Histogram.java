@@ -0,0 +1,95 @@
+package pl.piterowsky.javamix.metrics;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free log-linear histogram in the spirit of HdrHistogram. Values below 64 are counted exactly, larger ones
+ * in buckets about 3% wide. Recording takes a few atomic adds and allocates nothing.
+ */
+public final class Histogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int HALF = 1 << (SUB_BITS - 1);
+    /**
+     * Larger values are recorded as this one, it is over an hour in nanoseconds
+     */
+    public static final long MAX_VALUE = (1L << 42) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        long clamped = value < 0 ? 0 : Math.min(value, MAX_VALUE);
+        counts.incrementAndGet(indexOf(clamped));
+        sum.add(clamped);
+        long current = max.get();
+        while (clamped > current && !max.compareAndSet(current, clamped)) {
+            current = max.get();
+        }
+    }
+
+    public HistogramSnapshot snapshot() {
+        return snapshot(List.of(this));
+    }
+
+    /**
+     * Summary of all histograms together, as if every value had been recorded into one of them
+     */
+    public static HistogramSnapshot snapshot(Collection<Histogram> histograms) {
+        var merged = new long[indexOf(MAX_VALUE) + 1];
+        long total = 0;
+        long sum = 0;
+        long max = 0;
+        for (Histogram histogram : histograms) {
+            for (int i = 0; i < merged.length; i++) {
+                long count = histogram.counts.get(i);
+                merged[i] += count;
+                total += count;
+            }
+            sum += histogram.sum.sum();
+            max = Math.max(max, histogram.max.get());
+        }
+        if (total == 0) {
+            return new HistogramSnapshot(0, 0, 0, 0, 0, 0, 0);
+        }
+        return new HistogramSnapshot(total, (double) sum / total, max,
+                percentile(merged, total, 0.5, max), percentile(merged, total, 0.9, max),
+                percentile(merged, total, 0.99, max), percentile(merged, total, 0.999, max));
+    }
+
+    private static long percentile(long[] counts, long total, double percentile, long max) {
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Upper end of the bucket so percentiles are never under-reported, capped by the real maximum
+                return Math.min(highestOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int indexOf(long value) {
+        if (value < 2 * HALF) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return (shift << (SUB_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    static long highestOf(int index) {
+        if (index < 2 * HALF) {
+            return index;
+        }
+        int shift = (index >>> (SUB_BITS - 1)) - 1;
+        long subBucket = (index & (HALF - 1)) + HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
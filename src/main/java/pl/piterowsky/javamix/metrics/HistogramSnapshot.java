@@ -0,0 +1,19 @@
+package pl.piterowsky.javamix.metrics;
+
+import lombok.Value;
+
+/**
+ * Point in time summary of a {@link Histogram}, values are in the unit they were recorded in
+ */
+@Value
+public class HistogramSnapshot {
+
+    long count;
+    double mean;
+    long max;
+    long p50;
+    long p90;
+    long p99;
+    long p999;
+
+}
@@ -0,0 +1,47 @@
+package pl.piterowsky.javamix.metrics;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registration in the platform MBean server under the {@code pl.piterowsky.javamix} domain
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class MBeans {
+
+    private static final String DOMAIN = "pl.piterowsky.javamix";
+
+    /**
+     * Registers the bean as {@code pl.piterowsky.javamix:type=<type>,name=<name>}, replacing a previous one of
+     * the same name such as a server restarted in the same JVM
+     */
+    public static ObjectName register(String type, String name, Object bean) {
+        var server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            var objectName = new ObjectName(DOMAIN + ":type=" + ObjectName.quote(type) + ",name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(bean, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register MBean " + type + " " + name, e);
+        }
+    }
+
+    public static void unregister(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            // Already replaced by a newer registration
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister MBean " + objectName, e);
+        }
+    }
+
+}
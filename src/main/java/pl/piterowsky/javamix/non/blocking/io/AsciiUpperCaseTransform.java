@@ -0,0 +1,45 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Upper cases ASCII letters eight bytes at a time, bytes outside of 'a'..'z' are left untouched.
+ * Gives the same result as {@code (byte) Character.toUpperCase((char) b)} for every byte value.
+ */
+final class AsciiUpperCaseTransform implements ByteTransform {
+
+    static final AsciiUpperCaseTransform INSTANCE = new AsciiUpperCaseTransform();
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+    // Adding these to a 7 bit lane sets its high bit when the lane is >= 'a' or > 'z' respectively
+    private static final long GE_LOWER_A = (0x80 - 'a') * ONES;
+    private static final long GT_LOWER_Z = (0x80 - 'z' - 1) * ONES;
+
+    private AsciiUpperCaseTransform() {
+    }
+
+    @Override
+    public void apply(ByteBuffer bb) {
+        int i = bb.position();
+        int limit = bb.limit();
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            bb.putLong(i, toUpperCase(bb.getLong(i)));
+        }
+        for (; i < limit; i++) {
+            byte b = bb.get(i);
+            if (b >= 'a' && b <= 'z') {
+                bb.put(i, (byte) (b - ('a' - 'A')));
+            }
+        }
+    }
+
+    static long toUpperCase(long word) {
+        long lanes = word & LOW_SEVEN_BITS;
+        long lowerCase = (lanes + GE_LOWER_A) & ~(lanes + GT_LOWER_Z) & ~word & HIGH_BITS;
+        // 0x80 >>> 2 is 0x20, the distance between lower and upper case letters
+        return word ^ (lowerCase >>> 2);
+    }
+
+}
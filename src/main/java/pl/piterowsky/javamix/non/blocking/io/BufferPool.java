@@ -0,0 +1,102 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import lombok.Value;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of direct buffers split into power of two size classes.
+ * Not thread safe, every event loop owns its own pool, only {@link #stats()} may be called from other threads.
+ */
+public class BufferPool {
+
+    static final int MIN_CLASS_SIZE = 128;
+    static final int MAX_CLASS_SIZE = 64 * 1024;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CLASS_SIZE);
+
+    private final ArrayDeque<ByteBuffer>[] free;
+    private final int maxPooledPerClass;
+
+    private volatile long hits;
+    private volatile long misses;
+    private volatile long outstanding;
+    private volatile int pooled;
+
+    @SuppressWarnings("unchecked")
+    BufferPool(int maxPooledPerClass) {
+        this.maxPooledPerClass = maxPooledPerClass;
+        this.free = new ArrayDeque[sizeClass(MAX_CLASS_SIZE) + 1];
+        for (int i = 0; i < free.length; i++) {
+            free[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Returns a cleared direct buffer with capacity of at least {@code size} bytes
+     */
+    ByteBuffer acquire(int size) {
+        outstanding++;
+        if (size > MAX_CLASS_SIZE) {
+            misses++;
+            return ByteBuffer.allocateDirect(size);
+        }
+        int sizeClass = sizeClass(size);
+        ByteBuffer bb = free[sizeClass].pollLast();
+        if (bb == null) {
+            misses++;
+            return ByteBuffer.allocateDirect(MIN_CLASS_SIZE << sizeClass);
+        }
+        hits++;
+        pooled--;
+        return bb;
+    }
+
+    /**
+     * Heap and read only buffers are borrowed views, e.g. of mapped files, they never came from the pool
+     */
+    void release(ByteBuffer bb) {
+        if (bb.isReadOnly() || !bb.isDirect()) {
+            return;
+        }
+        outstanding--;
+        int capacity = bb.capacity();
+        if (capacity > MAX_CLASS_SIZE || Integer.bitCount(capacity) != 1 || capacity < MIN_CLASS_SIZE) {
+            return;
+        }
+        var queue = free[sizeClass(capacity)];
+        if (queue.size() < maxPooledPerClass) {
+            bb.clear();
+            queue.addLast(bb);
+            pooled++;
+        }
+    }
+
+    Stats stats() {
+        return new Stats(hits, misses, outstanding, pooled);
+    }
+
+    private static int sizeClass(int size) {
+        if (size <= MIN_CLASS_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    @Value
+    public static class Stats {
+
+        long hits;
+        long misses;
+        long outstanding;
+        int pooled;
+
+        Stats plus(Stats other) {
+            return new Stats(hits + other.hits, misses + other.misses,
+                    outstanding + other.outstanding, pooled + other.pooled);
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Array backed FIFO of outbound elements, either {@link ByteBuffer}s or {@link FileRegion}s.
+ * Grows by doubling and never allocates on add/poll afterwards.
+ */
+class BufferRing {
+
+    private Object[] elements;
+    private int head;
+    private int size;
+
+    BufferRing() {
+        this(16);
+    }
+
+    BufferRing(int initialCapacity) {
+        this.elements = new Object[Integer.highestOneBit(Math.max(2, initialCapacity - 1)) << 1];
+    }
+
+    void addLast(Object element) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[(head + size) & (elements.length - 1)] = element;
+        size++;
+    }
+
+    Object peekFirst() {
+        return size == 0 ? null : elements[head];
+    }
+
+    Object pollFirst() {
+        if (size == 0) {
+            return null;
+        }
+        var element = elements[head];
+        elements[head] = null;
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return element;
+    }
+
+    /**
+     * Copies up to {@code max} buffers from the head into {@code dst}, suitable for a gathering write.
+     * Stops at the first element which is not a buffer.
+     *
+     * @return number of copied buffers
+     */
+    int peekBuffers(ByteBuffer[] dst, int max) {
+        int limit = Math.min(Math.min(max, dst.length), size);
+        int count = 0;
+        while (count < limit) {
+            var element = elements[(head + count) & (elements.length - 1)];
+            if (!(element instanceof ByteBuffer)) {
+                break;
+            }
+            dst[count++] = (ByteBuffer) element;
+        }
+        return count;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void drain(Consumer<Object> consumer) {
+        Object element;
+        while ((element = pollFirst()) != null) {
+            consumer.accept(element);
+        }
+    }
+
+    private void grow() {
+        var grown = new Object[elements.length << 1];
+        int firstPart = elements.length - head;
+        System.arraycopy(elements, head, grown, 0, firstPart);
+        System.arraycopy(elements, 0, grown, firstPart, head);
+        elements = grown;
+        head = 0;
+    }
+
+}
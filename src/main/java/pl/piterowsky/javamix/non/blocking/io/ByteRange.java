@@ -0,0 +1,48 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import lombok.Value;
+
+/**
+ * Single byte range in the HTTP {@code Range} syntax: {@code bytes=first-last}, {@code bytes=first-} or {@code bytes=-suffix}
+ */
+@Value
+class ByteRange {
+
+    long first;
+    long last;
+
+    long length() {
+        return last - first + 1;
+    }
+
+    static ByteRange full(long size) {
+        return new ByteRange(0, size - 1);
+    }
+
+    /**
+     * @return resolved inclusive range or null when the spec cannot be satisfied for a file of the given size
+     */
+    static ByteRange parse(String spec, long size) {
+        if (!spec.startsWith("bytes=") || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        int dash = spec.indexOf('-', 6);
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(6, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                return suffix <= 0 || size == 0 ? null : new ByteRange(Math.max(0, size - suffix), size - 1);
+            }
+            long from = Long.parseLong(first);
+            long to = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            return from < 0 || from >= size || to < from ? null : new ByteRange(from, to);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * In place transformation of the bytes between position and limit of a buffer.
+ * One instance is shared by all event loops, so implementations have to be stateless.
+ */
+@FunctionalInterface
+public interface ByteTransform {
+
+    void apply(ByteBuffer bb);
+
+    default ByteTransform andThen(ByteTransform next) {
+        return bb -> {
+            apply(bb);
+            next.apply(bb);
+        };
+    }
+
+    static ByteTransform identity() {
+        return bb -> {
+        };
+    }
+
+    static ByteTransform asciiUpperCase() {
+        return AsciiUpperCaseTransform.INSTANCE;
+    }
+
+}
@@ -0,0 +1,182 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * Per connection codec chain: read bytes are framed, passed through the inbound transforms and handed to a
+ * {@link FrameHandler}, replies go through the outbound transforms and the frame encoder.
+ * Complete frames are decoded straight from the read buffer, only a partial tail gets carried over to the next read.
+ */
+@Log4j2
+public class CodecPipeline implements ConnectionHandler {
+
+    private static final int MIN_CUMULATION_SIZE = 1024;
+
+    private final FrameDecoder decoder;
+    private final FrameEncoder encoder;
+    private final ByteTransform inbound;
+    private final ByteTransform outbound;
+    private final FrameHandler handler;
+    private Connection connection;
+    private ByteBuffer cumulation;
+
+    private CodecPipeline(Builder builder) {
+        this.decoder = builder.framing.newDecoder();
+        this.encoder = builder.framing.getEncoder();
+        this.inbound = builder.inbound;
+        this.outbound = builder.outbound;
+        this.handler = builder.handler;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Connection connection() {
+        return connection;
+    }
+
+    public ByteBuffer allocate(int size) {
+        return connection.allocate(size);
+    }
+
+    /**
+     * Copies a frame into a pooled buffer, frames themselves must not outlive {@link FrameHandler#onFrame}
+     */
+    public ByteBuffer copyOf(ByteBuffer frame) {
+        var copy = connection.allocate(frame.remaining());
+        copy.put(frame.duplicate()).flip();
+        return copy;
+    }
+
+    /**
+     * Sends a payload as one frame, ownership of the buffer passes to the pipeline. Read only buffers, which include
+     * the frames handed to {@link FrameHandler#onFrame}, are not owned by the caller and get copied first.
+     */
+    public void write(ByteBuffer payload) {
+        if (payload.isReadOnly()) {
+            payload = copyOf(payload);
+        }
+        outbound.apply(payload);
+        encoder.encode(connection, payload);
+    }
+
+    @Override
+    public void onRead(Connection connection, ByteBuffer bb) {
+        this.connection = connection;
+        try {
+            if (cumulation == null) {
+                decodeAll(bb);
+                if (bb.hasRemaining() && connection.isOpen()) {
+                    cumulation = connection.allocate(Math.max(MIN_CUMULATION_SIZE, bb.remaining() * 2));
+                    cumulation.put(bb);
+                }
+            } else {
+                ensureWritable(bb.remaining());
+                cumulation.put(bb);
+                cumulation.flip();
+                decodeAll(cumulation);
+                if (cumulation == null) {
+                    // Handler closed the connection, which already released the cumulation
+                    return;
+                }
+                if (cumulation.hasRemaining()) {
+                    cumulation.compact();
+                } else {
+                    releaseCumulation();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Closing {} after codec failure: {}", connection.getRemoteAddress(), e.getMessage());
+            connection.close();
+        } finally {
+            connection.release(bb);
+        }
+    }
+
+    @Override
+    public void onClose(Connection connection) {
+        releaseCumulation();
+    }
+
+    private void decodeAll(ByteBuffer in) {
+        ByteBuffer frame;
+        while (connection.isOpen() && (frame = decoder.decode(in)) != null) {
+            inbound.apply(frame);
+            // The frame shares the pooled read buffer released after this read, read only makes write copy it
+            handler.onFrame(this, frame.asReadOnlyBuffer());
+        }
+    }
+
+    private void ensureWritable(int bytes) {
+        if (cumulation.remaining() >= bytes) {
+            return;
+        }
+        var grown = connection.allocate(Math.max(cumulation.capacity() * 2, cumulation.position() + bytes));
+        cumulation.flip();
+        grown.put(cumulation);
+        connection.release(cumulation);
+        cumulation = grown;
+    }
+
+    private void releaseCumulation() {
+        if (cumulation != null) {
+            connection.release(cumulation);
+            cumulation = null;
+        }
+    }
+
+    public static class Builder {
+
+        private Framing framing = Framing.lines(8 * 1024);
+        private ByteTransform inbound;
+        private ByteTransform outbound;
+        private FrameHandler handler;
+
+        public Builder framing(Framing framing) {
+            this.framing = framing;
+            return this;
+        }
+
+        /**
+         * Adds a transform applied in place to every decoded frame before the handler sees it
+         */
+        public Builder inbound(ByteTransform transform) {
+            this.inbound = inbound == null ? transform : inbound.andThen(transform);
+            return this;
+        }
+
+        /**
+         * Adds a transform applied in place to every payload before it gets encoded
+         */
+        public Builder outbound(ByteTransform transform) {
+            this.outbound = outbound == null ? transform : outbound.andThen(transform);
+            return this;
+        }
+
+        public Builder handler(FrameHandler handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        /**
+         * @return factory creating one pipeline per connection, pass it to {@link NonBlockingIOOptions#handler}
+         */
+        public Supplier<CodecPipeline> factory() {
+            if (handler == null) {
+                throw new IllegalStateException("Frame handler is required");
+            }
+            var snapshot = new Builder();
+            snapshot.framing = framing;
+            snapshot.inbound = inbound != null ? inbound : ByteTransform.identity();
+            snapshot.outbound = outbound != null ? outbound : ByteTransform.identity();
+            snapshot.handler = handler;
+            return () -> new CodecPipeline(snapshot);
+        }
+
+    }
+
+}
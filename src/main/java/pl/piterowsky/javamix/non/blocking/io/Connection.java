@@ -0,0 +1,209 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of one accepted connection, owned by a single {@link EventLoop}.
+ * Handlers use it on the loop thread to allocate and write buffers, only {@link #getPendingBytes()},
+ * {@link #getRemoteAddress()} and {@link #execute} are safe to call from other threads.
+ */
+public class Connection {
+
+    private final EventLoop eventLoop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final SocketAddress remoteAddress;
+    private final BufferPool bufferPool;
+    private final AtomicLong totalPendingBytes;
+    private final ConnectionHandler handler;
+    private final BufferRing outbound = new BufferRing();
+    private final TimerWheel.Timeout<Connection> timeout = new TimerWheel.Timeout<>(this);
+    private volatile long pendingBytes;
+    private boolean readPaused;
+    private boolean readSuspended;
+    private boolean closeWhenFlushed;
+    private long lastReadMillis;
+    private long lastWriteMillis;
+
+    Connection(EventLoop eventLoop, SocketChannel channel, SelectionKey key, ConnectionHandler handler, long nowMillis) {
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+        this.key = key;
+        this.remoteAddress = channel.socket().getRemoteSocketAddress();
+        this.bufferPool = eventLoop.getBufferPool();
+        this.totalPendingBytes = eventLoop.getTotalPendingBytes();
+        this.handler = handler;
+        this.lastReadMillis = nowMillis;
+        this.lastWriteMillis = nowMillis;
+    }
+
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * Bytes queued for writing, file regions included so the watermarks also hold back clients pipelining downloads
+     */
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Takes a direct buffer from the pool of the owning event loop
+     */
+    public ByteBuffer allocate(int size) {
+        return bufferPool.acquire(size);
+    }
+
+    public void release(ByteBuffer bb) {
+        bufferPool.release(bb);
+    }
+
+    /**
+     * Queues bytes between position and limit. Ownership passes to the connection,
+     * pooled buffers return to the pool once written and read only views are simply dropped.
+     */
+    public void write(ByteBuffer bb) {
+        outbound.addLast(bb);
+        pendingBytes += bb.remaining();
+        totalPendingBytes.addAndGet(bb.remaining());
+    }
+
+    /**
+     * Queues a file region which gets sent with {@link java.nio.channels.FileChannel#transferTo}
+     */
+    public void write(FileRegion region) {
+        outbound.addLast(region);
+        pendingBytes += region.remaining();
+        totalPendingBytes.addAndGet(region.remaining());
+    }
+
+    public void close() {
+        eventLoop.close(this);
+    }
+
+    /**
+     * Runs the task on the thread of the owning event loop, the way for other threads to write to the connection
+     */
+    public void execute(Runnable task) {
+        eventLoop.execute(task);
+    }
+
+    /**
+     * Starts sending output written outside of {@link ConnectionHandler#onRead}, writes made there are picked up anyway
+     */
+    public void flush() {
+        eventLoop.flush(this);
+    }
+
+    /**
+     * Stops reading until {@link #resumeReads()}, independently of the watermarks
+     */
+    public void suspendReads() {
+        readSuspended = true;
+        updateInterest(readPaused);
+    }
+
+    public void resumeReads() {
+        readSuspended = false;
+        updateInterest(readPaused);
+    }
+
+    /**
+     * Stops reading and closes the connection as soon as everything queued so far has been written
+     */
+    public void closeWhenFlushed() {
+        closeWhenFlushed = true;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    ConnectionHandler getHandler() {
+        return handler;
+    }
+
+    BufferRing getOutbound() {
+        return outbound;
+    }
+
+    TimerWheel.Timeout<Connection> getTimeout() {
+        return timeout;
+    }
+
+    long getLastReadMillis() {
+        return lastReadMillis;
+    }
+
+    long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    void touchRead(long nowMillis) {
+        lastReadMillis = nowMillis;
+    }
+
+    void touchWrite(long nowMillis) {
+        lastWriteMillis = nowMillis;
+    }
+
+    void written(long bytes) {
+        pendingBytes -= bytes;
+        totalPendingBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Drops everything still queued, returns pooled buffers and closes file regions
+     */
+    void discardOutbound() {
+        totalPendingBytes.addAndGet(-pendingBytes);
+        pendingBytes = 0;
+        outbound.drain(this::discard);
+    }
+
+    private void discard(Object element) {
+        if (element instanceof FileRegion) {
+            ((FileRegion) element).close();
+        } else {
+            bufferPool.release((ByteBuffer) element);
+        }
+    }
+
+    boolean isCloseWhenFlushed() {
+        return closeWhenFlushed;
+    }
+
+    boolean isReadPaused() {
+        return readPaused;
+    }
+
+    boolean isReadSuspended() {
+        return readSuspended;
+    }
+
+    /**
+     * Re-registers interest, reads stop while paused or suspended and writes are requested only when something is queued
+     */
+    void updateInterest(boolean readPaused) {
+        this.readPaused = readPaused;
+        int ops = (readPaused || readSuspended || closeWhenFlushed ? 0 : SelectionKey.OP_READ)
+                | (outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+        if (key.isValid() && key.interestOps() != ops) {
+            key.interestOps(ops);
+        }
+    }
+
+}
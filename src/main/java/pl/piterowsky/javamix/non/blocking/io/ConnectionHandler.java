@@ -0,0 +1,25 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Protocol logic of one connection, always called on the thread of the owning event loop
+ */
+public interface ConnectionHandler {
+
+    /**
+     * Receives freshly read bytes between position and limit of a pooled buffer.
+     * Ownership passes to the handler, which writes it back, keeps it or releases it through the connection.
+     */
+    void onRead(Connection connection, ByteBuffer bb);
+
+    /**
+     * Called after a write left at most the low watermark of bytes queued, producers waiting for room may continue
+     */
+    default void onDrained(Connection connection) {
+    }
+
+    default void onClose(Connection connection) {
+    }
+
+}
@@ -0,0 +1,416 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Single threaded reactor owning a subset of connections.
+ * All connection state is touched only from the loop thread, other threads talk to it through {@link #register}
+ * and {@link #execute}.
+ */
+@Log4j2
+class EventLoop implements Runnable {
+
+    // Concurrent only so that monitoring threads can iterate it, all mutations happen on the loop thread
+    private final Map<SocketChannel, Connection> connections = new ConcurrentHashMap<>();
+    private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicLong totalPendingBytes;
+    private final Selector selector;
+    private final BufferPool bufferPool;
+    private final int readBufferSize;
+    private final Supplier<? extends ConnectionHandler> handlerFactory;
+    private final ByteBuffer[] writeBuffers;
+    private final long highWatermark;
+    private final long lowWatermark;
+    private final long maxTotalPendingBytes;
+    private final long idleTimeoutMillis;
+    private final long readTimeoutMillis;
+    private final long writeTimeoutMillis;
+    private final long shortestTimeoutMillis;
+    private final TimerWheel timers;
+    private final EventLoopMetrics metrics = new EventLoopMetrics();
+    private long nowMillis = currentMillis();
+    private volatile boolean running = true;
+
+    EventLoop(NonBlockingIOOptions options, AtomicLong totalPendingBytes) throws IOException {
+        this.selector = Selector.open();
+        this.bufferPool = new BufferPool(options.getMaxPooledBuffersPerClass());
+        this.readBufferSize = options.getReadBufferSize();
+        if (options.getHandlerFactory() != null) {
+            this.handlerFactory = options.getHandlerFactory();
+        } else {
+            var echo = new TransformEchoHandler(options.getTransform());
+            this.handlerFactory = () -> echo;
+        }
+        this.writeBuffers = new ByteBuffer[options.getMaxWriteBuffers()];
+        this.highWatermark = options.getHighWatermark();
+        this.lowWatermark = options.getLowWatermark();
+        this.maxTotalPendingBytes = options.getMaxTotalPendingBytes();
+        this.totalPendingBytes = totalPendingBytes;
+        this.idleTimeoutMillis = options.getIdleTimeout().toMillis();
+        this.readTimeoutMillis = options.getReadTimeout().toMillis();
+        this.writeTimeoutMillis = options.getWriteTimeout().toMillis();
+        this.shortestTimeoutMillis = shortestTimeout(idleTimeoutMillis, readTimeoutMillis, writeTimeoutMillis);
+        this.timers = new TimerWheel(options.getTimerWheelSize(), options.getTimerTick().toMillis(), nowMillis);
+    }
+
+    void register(SocketChannel sc) {
+        connectionCount.incrementAndGet();
+        registrations.add(sc);
+        selector.wakeup();
+    }
+
+    /**
+     * Runs the task on the loop thread during the next iteration
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    int connectionCount() {
+        return connectionCount.get();
+    }
+
+    BufferPool.Stats bufferPoolStats() {
+        return bufferPool.stats();
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    AtomicLong getTotalPendingBytes() {
+        return totalPendingBytes;
+    }
+
+    void collectPendingBytes(Map<SocketAddress, Long> target) {
+        for (Connection connection : connections.values()) {
+            target.put(connection.getRemoteAddress(), connection.getPendingBytes());
+        }
+    }
+
+    EventLoopMetrics getMetrics() {
+        return metrics;
+    }
+
+    int pendingRegistrations() {
+        return registrations.size();
+    }
+
+    int pendingTasks() {
+        return tasks.size();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(timers.millisToNextTick(nowMillis));
+                long iterationStart = System.nanoTime();
+                nowMillis = currentMillis();
+                registerPending();
+                runTasks();
+                var keys = selector.selectedKeys();
+                int readyKeys = keys.size();
+                for (Iterator<SelectionKey> it = keys.iterator(); it.hasNext();) {
+                    var sk = it.next();
+                    it.remove();
+                    handle(sk);
+                }
+                timers.advance(nowMillis, this::handleTimeout);
+                metrics.iteration(System.nanoTime() - iterationStart, readyKeys);
+            }
+        } catch (IOException e) {
+            log.error("Event loop failed", e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void handle(SelectionKey sk) {
+        var connection = (Connection) sk.attachment();
+        try {
+            if (sk.isValid() && sk.isReadable()) {
+                handleRead(connection);
+            }
+            if (sk.isValid() && sk.isWritable()) {
+                handleWrite(connection);
+            }
+        } catch (IOException e) {
+            log.debug("Closing connection after I/O error: {}", e.getMessage());
+            close(connection);
+        } catch (RuntimeException e) {
+            // A failing handler costs its own connection, the loop goes on serving the others
+            log.error("Closing connection {} after handler failure", connection.getRemoteAddress(), e);
+            close(connection);
+        }
+    }
+
+    private void registerPending() {
+        SocketChannel sc;
+        while ((sc = registrations.poll()) != null) {
+            try {
+                var sk = sc.register(selector, SelectionKey.OP_READ);
+                var connection = new Connection(this, sc, sk, handlerFactory.get(), nowMillis);
+                sk.attach(connection);
+                connections.put(sc, connection);
+                armTimeout(connection);
+            } catch (IOException e) {
+                log.debug("Could not register connection: {}", e.getMessage());
+                connectionCount.decrementAndGet();
+                closeQuietly(sc);
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Event loop task failed", e);
+            }
+        }
+    }
+
+    /**
+     * Picks up output queued outside of {@link ConnectionHandler#onRead}, for example by a task
+     */
+    void flush(Connection connection) {
+        if (!connection.isOpen()) {
+            return;
+        }
+        var queue = connection.getOutbound();
+        if (connection.isCloseWhenFlushed() && queue.isEmpty()) {
+            close(connection);
+            return;
+        }
+        if (!queue.isEmpty() && (connection.getKey().interestOps() & SelectionKey.OP_WRITE) == 0) {
+            connection.touchWrite(nowMillis);
+            armTimeout(connection);
+        }
+        long pending = connection.getPendingBytes();
+        connection.updateInterest(connection.isReadPaused() ? pending > lowWatermark : pending >= highWatermark);
+    }
+
+    private void handleRead(Connection connection) throws IOException {
+        SocketChannel sc = connection.getChannel();
+        ByteBuffer bb = bufferPool.acquire(readBufferSize);
+
+        int read;
+        try {
+            read = sc.read(bb);
+        } catch (IOException e) {
+            bufferPool.release(bb);
+            throw e;
+        }
+        if (read <= 0) {
+            bufferPool.release(bb);
+            if (read == -1) {
+                close(connection);
+            }
+        } else {
+            bb.flip();
+            metrics.read(read);
+            connection.touchRead(nowMillis);
+            boolean startsWaiting = connection.getOutbound().isEmpty();
+            connection.getHandler().onRead(connection, bb);
+            if (!connection.isOpen()) {
+                return;
+            }
+            if (startsWaiting && !connection.getOutbound().isEmpty()) {
+                // Write timeout counts from the moment output starts waiting and may be due before the armed one
+                connection.touchWrite(nowMillis);
+                armTimeout(connection);
+            }
+            // Keep reading until the high watermark, pipelined requests get flushed together by one gathering write
+            connection.updateInterest(connection.getPendingBytes() >= highWatermark);
+            if (connection.isCloseWhenFlushed() && connection.getOutbound().isEmpty()) {
+                close(connection);
+            } else if (totalPendingBytes.get() > maxTotalPendingBytes) {
+                shedLargest();
+            }
+        }
+    }
+
+    private void handleWrite(Connection connection) throws IOException {
+        SocketChannel sc = connection.getChannel();
+        BufferRing queue = connection.getOutbound();
+
+        long written;
+        if (queue.peekFirst() instanceof FileRegion) {
+            var region = (FileRegion) queue.peekFirst();
+            written = region.transferTo(sc);
+            connection.written(written);
+            if (region.isDone()) {
+                queue.pollFirst();
+                region.close();
+            }
+        } else {
+            int count = queue.peekBuffers(writeBuffers, writeBuffers.length);
+            try {
+                written = sc.write(writeBuffers, 0, count);
+            } finally {
+                Arrays.fill(writeBuffers, 0, count, null);
+            }
+            connection.written(written);
+            while (queue.peekFirst() instanceof ByteBuffer && !((ByteBuffer) queue.peekFirst()).hasRemaining()) {
+                bufferPool.release((ByteBuffer) queue.pollFirst());
+            }
+        }
+        if (written > 0) {
+            metrics.written(written);
+            connection.touchWrite(nowMillis);
+        }
+
+        if (connection.isCloseWhenFlushed() && queue.isEmpty()) {
+            close(connection);
+            return;
+        }
+        if (connection.getPendingBytes() <= lowWatermark) {
+            connection.getHandler().onDrained(connection);
+        }
+        boolean readPaused = connection.isReadPaused() && connection.getPendingBytes() > lowWatermark;
+        if (connection.isReadPaused() && !readPaused) {
+            // Time spent paused by backpressure does not count towards the read timeout
+            connection.touchRead(nowMillis);
+            connection.updateInterest(false);
+            armTimeout(connection);
+        } else {
+            connection.updateInterest(readPaused);
+        }
+    }
+
+    private void armTimeout(Connection connection) {
+        long deadline = nextDeadline(connection);
+        if (deadline == Long.MAX_VALUE) {
+            if (shortestTimeoutMillis == Long.MAX_VALUE) {
+                return;
+            }
+            // Nothing is being waited for right now, check again later
+            deadline = nowMillis + shortestTimeoutMillis;
+        }
+        timers.schedule(connection.getTimeout(), deadline);
+    }
+
+    /**
+     * Activity only bumps timestamps, expired timers re-arm themselves until the connection is really overdue
+     */
+    private void handleTimeout(TimerWheel.Timeout<?> timeout) {
+        var connection = (Connection) timeout.attachment();
+        if (nextDeadline(connection) <= nowMillis) {
+            log.debug("Closing timed out connection {}", connection.getRemoteAddress());
+            close(connection);
+        } else {
+            armTimeout(connection);
+        }
+    }
+
+    private long nextDeadline(Connection connection) {
+        long deadline = Long.MAX_VALUE;
+        if (idleTimeoutMillis > 0) {
+            long lastActivity = Math.max(connection.getLastReadMillis(), connection.getLastWriteMillis());
+            deadline = Math.min(deadline, lastActivity + idleTimeoutMillis);
+        }
+        if (readTimeoutMillis > 0 && !connection.isReadPaused() && !connection.isReadSuspended()) {
+            deadline = Math.min(deadline, connection.getLastReadMillis() + readTimeoutMillis);
+        }
+        if (writeTimeoutMillis > 0 && !connection.getOutbound().isEmpty()) {
+            deadline = Math.min(deadline, connection.getLastWriteMillis() + writeTimeoutMillis);
+        }
+        return deadline;
+    }
+
+    /**
+     * Over the global limit the connection of this loop holding the most unsent bytes gets dropped
+     */
+    private void shedLargest() {
+        Connection largest = null;
+        for (Connection connection : connections.values()) {
+            if (largest == null || connection.getPendingBytes() > largest.getPendingBytes()) {
+                largest = connection;
+            }
+        }
+        if (largest != null && largest.getPendingBytes() > 0) {
+            log.warn("Pending bytes limit {} exceeded, closing {} holding {} bytes",
+                    maxTotalPendingBytes, largest.getRemoteAddress(), largest.getPendingBytes());
+            close(largest);
+        }
+    }
+
+    void close(Connection connection) {
+        timers.cancel(connection.getTimeout());
+        if (connections.remove(connection.getChannel()) != null) {
+            connectionCount.decrementAndGet();
+            connection.discardOutbound();
+            try {
+                connection.getHandler().onClose(connection);
+            } catch (RuntimeException e) {
+                log.error("Handler failed while closing connection {}", connection.getRemoteAddress(), e);
+            }
+        }
+        closeQuietly(connection.getChannel());
+    }
+
+    private void closeQuietly(SocketChannel sc) {
+        try {
+            sc.close();
+        } catch (IOException e) {
+            log.debug("Could not close connection: {}", e.getMessage());
+        }
+    }
+
+    private static long shortestTimeout(long... timeouts) {
+        long shortest = Long.MAX_VALUE;
+        for (long timeout : timeouts) {
+            if (timeout > 0) {
+                shortest = Math.min(shortest, timeout);
+            }
+        }
+        return shortest;
+    }
+
+    private static long currentMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private void closeAll() {
+        registerPending();
+        runTasks();
+        for (Connection connection : new ArrayList<>(connections.values())) {
+            close(connection);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Could not close selector: {}", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import pl.piterowsky.javamix.metrics.Histogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one event loop. Only the loop thread records, so adders never see contention.
+ */
+class EventLoopMetrics {
+
+    private final Histogram iterationNanos = new Histogram();
+    private final Histogram readyKeys = new Histogram();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    /**
+     * Time spent handling what one select returned, waiting in select is not included
+     */
+    void iteration(long nanos, int keys) {
+        iterationNanos.record(nanos);
+        readyKeys.record(keys);
+    }
+
+    void read(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    void written(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    Histogram getIterationNanos() {
+        return iterationNanos;
+    }
+
+    Histogram getReadyKeys() {
+        return readyKeys;
+    }
+
+    long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+}
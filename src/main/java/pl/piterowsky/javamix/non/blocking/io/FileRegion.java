@@ -0,0 +1,71 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Part of a file sent straight from the page cache to the socket (sendfile on Linux), no bytes pass through the heap.
+ * The region owns the file channel and closes it once sent or discarded, unless it was given a release action
+ * for a channel shared with other regions.
+ */
+@Log4j2
+public final class FileRegion {
+
+    private final FileChannel file;
+    private final Runnable release;
+    private long position;
+    private long remaining;
+    private boolean closed;
+
+    public FileRegion(FileChannel file, long position, long count) {
+        this(file, position, count, () -> closeQuietly(file));
+    }
+
+    FileRegion(FileChannel file, long position, long count, Runnable release) {
+        this.file = file;
+        this.release = release;
+        this.position = position;
+        this.remaining = count;
+    }
+
+    /**
+     * @throws EOFException when the file got truncated below the region, the rest can never be sent
+     */
+    long transferTo(WritableByteChannel target) throws IOException {
+        long transferred = file.transferTo(position, remaining, target);
+        if (transferred == 0 && position >= file.size()) {
+            throw new EOFException("File truncated to " + file.size() + " bytes, " + remaining + " left to send");
+        }
+        position += transferred;
+        remaining -= transferred;
+        return transferred;
+    }
+
+    long remaining() {
+        return remaining;
+    }
+
+    boolean isDone() {
+        return remaining <= 0;
+    }
+
+    void close() {
+        if (!closed) {
+            closed = true;
+            release.run();
+        }
+    }
+
+    private static void closeQuietly(FileChannel file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            log.debug("Could not close file: {}", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,19 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental framer, one instance per connection since it may remember how far it already scanned
+ */
+public interface FrameDecoder {
+
+    /**
+     * Cuts the next frame out of the bytes between position and limit.
+     * The returned frame is a view sharing content with {@code in}, position moves past the consumed bytes.
+     *
+     * @return the frame or null when more bytes are needed
+     * @throws IllegalStateException when the input can never form a valid frame
+     */
+    ByteBuffer decode(ByteBuffer in);
+
+}
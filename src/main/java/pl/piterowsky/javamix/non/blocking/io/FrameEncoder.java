@@ -0,0 +1,13 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wraps an outgoing payload into a frame, headers and trailers go out as separate buffers so the payload is never copied
+ */
+@FunctionalInterface
+public interface FrameEncoder {
+
+    void encode(Connection connection, ByteBuffer payload);
+
+}
@@ -0,0 +1,14 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives decoded frames, the frame is read only and valid for the duration of the call.
+ * Passing it to {@link CodecPipeline#write} sends a copy.
+ */
+@FunctionalInterface
+public interface FrameHandler {
+
+    void onFrame(CodecPipeline pipeline, ByteBuffer frame);
+
+}
@@ -0,0 +1,50 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.util.function.Supplier;
+
+/**
+ * Matching pair of frame decoder and encoder
+ */
+public final class Framing {
+
+    private final Supplier<FrameDecoder> decoderFactory;
+    private final FrameEncoder encoder;
+
+    public Framing(Supplier<FrameDecoder> decoderFactory, FrameEncoder encoder) {
+        this.decoderFactory = decoderFactory;
+        this.encoder = encoder;
+    }
+
+    /**
+     * Frames prefixed with a four byte big endian length
+     */
+    public static Framing lengthPrefixed(int maxFrameLength) {
+        return new Framing(() -> new LengthFieldFrameDecoder(maxFrameLength), (connection, payload) -> {
+            var header = connection.allocate(LengthFieldFrameDecoder.HEADER_LENGTH);
+            header.putInt(payload.remaining()).flip();
+            connection.write(header);
+            connection.write(payload);
+        });
+    }
+
+    /**
+     * Frames terminated with {@code \n} or {@code \r\n}, replies are terminated with {@code \n}
+     */
+    public static Framing lines(int maxLineLength) {
+        return new Framing(() -> new LineFrameDecoder(maxLineLength), (connection, payload) -> {
+            connection.write(payload);
+            var newLine = connection.allocate(1);
+            newLine.put((byte) '\n').flip();
+            connection.write(newLine);
+        });
+    }
+
+    FrameDecoder newDecoder() {
+        return decoderFactory.get();
+    }
+
+    FrameEncoder getEncoder() {
+        return encoder;
+    }
+
+}
@@ -0,0 +1,150 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import com.sun.net.httpserver.HttpHandler;
+import lombok.extern.log4j.Log4j2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * HTTP/1.1 on top of the event loop. Requests are parsed on the loop thread and handled on the executor, pipelined
+ * requests are queued and handled one at a time so responses leave in request order.
+ */
+@Log4j2
+class HttpConnectionHandler implements ConnectionHandler {
+
+    static final int MAX_PIPELINED = 16;
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final HttpHandler handler;
+    private final Executor executor;
+    private final long maxQueuedBytes;
+    private final HttpRequestDecoder decoder;
+    private final Queue<HttpRequestDecoder.HttpRequest> pipeline = new ArrayDeque<>();
+    private NioHttpExchange current;
+    private boolean closing;
+    private int rejectedStatus;
+
+    HttpConnectionHandler(HttpHandler handler, Executor executor, NonBlockingIOOptions options) {
+        this.handler = handler;
+        this.executor = executor;
+        this.maxQueuedBytes = options.getHighWatermark();
+        this.decoder = new HttpRequestDecoder(options.getMaxHeaderBytes(), options.getMaxBodyBytes());
+    }
+
+    @Override
+    public void onRead(Connection connection, ByteBuffer bb) {
+        try {
+            while (!closing && bb.hasRemaining()) {
+                var request = decoder.decode(bb);
+                if (request == null) {
+                    break;
+                }
+                pipeline.add(request);
+                // Whatever follows a request asking to close would never be answered
+                closing = !request.keepAlive;
+            }
+        } catch (HttpRequestDecoder.Rejected e) {
+            log.debug("Rejected request from {}: {}", connection.getRemoteAddress(), e.getMessage());
+            closing = true;
+            rejectedStatus = e.getStatus();
+        } finally {
+            connection.release(bb);
+        }
+        if (closing || pipeline.size() >= MAX_PIPELINED) {
+            connection.suspendReads();
+        }
+        dispatchNext(connection);
+    }
+
+    @Override
+    public void onDrained(Connection connection) {
+        if (current != null) {
+            current.drained();
+        }
+    }
+
+    @Override
+    public void onClose(Connection connection) {
+        pipeline.clear();
+        if (current != null) {
+            current.abort();
+        }
+    }
+
+    /**
+     * Runs on the loop thread once the response of the exchange was fully handed over
+     */
+    void exchangeDone(Connection connection, NioHttpExchange exchange, boolean closeConnection) {
+        if (exchange != current) {
+            return;
+        }
+        current = null;
+        if (closeConnection) {
+            closing = true;
+            pipeline.clear();
+            rejectedStatus = 0;
+            connection.closeWhenFlushed();
+            connection.flush();
+            return;
+        }
+        dispatchNext(connection);
+    }
+
+    private void dispatchNext(Connection connection) {
+        if (current != null || !connection.isOpen()) {
+            return;
+        }
+        var request = pipeline.poll();
+        if (request == null) {
+            if (rejectedStatus != 0) {
+                respond(connection, rejectedStatus);
+                rejectedStatus = 0;
+            } else if (closing) {
+                connection.closeWhenFlushed();
+                connection.flush();
+            } else if (decoder.takeContinue()) {
+                // Only sent while idle, it must not end up in the middle of a previous response
+                connection.write(ByteBuffer.wrap(CONTINUE).asReadOnlyBuffer());
+                connection.flush();
+            }
+            return;
+        }
+        if (!closing && connection.isReadSuspended() && pipeline.size() < MAX_PIPELINED / 2) {
+            connection.resumeReads();
+        }
+        var exchange = new NioHttpExchange(this, connection, request, maxQueuedBytes);
+        current = exchange;
+        try {
+            executor.execute(() -> handle(exchange));
+        } catch (RejectedExecutionException e) {
+            current = null;
+            pipeline.clear();
+            closing = true;
+            respond(connection, 503);
+        }
+    }
+
+    private void handle(NioHttpExchange exchange) {
+        try {
+            handler.handle(exchange);
+        } catch (Exception e) {
+            log.error("Exception occurred while handling {} {}", exchange.getRequestMethod(),
+                    exchange.getRequestURI(), e);
+            exchange.fail();
+        }
+    }
+
+    private static void respond(Connection connection, int status) {
+        var response = "HTTP/1.1 " + status + ' ' + NioHttpExchange.reasonPhrase(status)
+                + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n";
+        connection.write(ByteBuffer.wrap(response.getBytes(StandardCharsets.US_ASCII)));
+        connection.closeWhenFlushed();
+        connection.flush();
+    }
+
+}
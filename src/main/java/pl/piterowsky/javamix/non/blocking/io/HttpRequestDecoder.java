@@ -0,0 +1,271 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import com.sun.net.httpserver.Headers;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incremental HTTP/1.1 request parser, one instance per connection. The head is collected across reads until the
+ * empty line, the body is read by its Content-Length. Both are bounded, chunked request bodies are not supported.
+ */
+final class HttpRequestDecoder {
+
+    private static final byte[] NO_BODY = new byte[0];
+    private static final int INITIAL_BODY_BYTES = 8 * 1024;
+
+    private final int maxHeaderBytes;
+    private final int maxBodyBytes;
+    private byte[] head = new byte[256];
+    private int headLength;
+    private HttpRequest request;
+    private int contentLength;
+    private byte[] body = NO_BODY;
+    private int bodyLength;
+    private boolean continuePending;
+
+    HttpRequestDecoder(int maxHeaderBytes, int maxBodyBytes) {
+        this.maxHeaderBytes = maxHeaderBytes;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * Consumes bytes between position and limit, bytes of a following pipelined request are left in {@code in}
+     *
+     * @return the complete request or null when more bytes are needed
+     * @throws Rejected when the request is malformed or over the limits, the connection cannot be reused after it
+     */
+    HttpRequest decode(ByteBuffer in) {
+        if (request == null) {
+            if (!readHead(in)) {
+                return null;
+            }
+            // The head ends with an empty line, it is not part of the parsed text
+            request = parseHead(new String(head, 0, headLength - 4, StandardCharsets.ISO_8859_1));
+            headLength = 0;
+            continuePending = request.expectsContinue && contentLength > 0;
+        }
+        int length = Math.min(in.remaining(), contentLength - bodyLength);
+        if (bodyLength + length > body.length) {
+            growBody(bodyLength + length);
+        }
+        in.get(body, bodyLength, length);
+        bodyLength += length;
+        if (bodyLength < contentLength) {
+            return null;
+        }
+        var complete = contentLength == 0 ? request : request.withBody(body);
+        request = null;
+        contentLength = 0;
+        body = NO_BODY;
+        bodyLength = 0;
+        continuePending = false;
+        return complete;
+    }
+
+    /**
+     * The body grows with the bytes which arrived rather than the Content-Length a client claims, so announcing
+     * large bodies without sending them pins no memory. Doubling keeps the copies linear, the last size is exact.
+     */
+    private void growBody(int needed) {
+        int size = Math.max(needed, Math.max(INITIAL_BODY_BYTES, body.length * 2));
+        body = Arrays.copyOf(body, Math.min(size, contentLength));
+    }
+
+    /**
+     * True once per request whose client waits for 100 Continue before sending the body
+     */
+    boolean takeContinue() {
+        var pending = continuePending;
+        continuePending = false;
+        return pending;
+    }
+
+    private boolean readHead(ByteBuffer in) {
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (headLength == 0 && (b == '\r' || b == '\n')) {
+                // Empty lines before the request line are ignored as RFC 7230 asks for
+                continue;
+            }
+            if (headLength == maxHeaderBytes) {
+                throw new Rejected(431, "Request head longer than " + maxHeaderBytes + " bytes");
+            }
+            if (headLength == head.length) {
+                head = Arrays.copyOf(head, Math.min(maxHeaderBytes, head.length * 2));
+            }
+            head[headLength++] = b;
+            if (b == '\n' && headLength >= 4 && head[headLength - 2] == '\r'
+                    && head[headLength - 3] == '\n' && head[headLength - 4] == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private HttpRequest parseHead(String text) {
+        var lines = text.split("\r\n");
+        var requestLine = lines[0];
+        int methodEnd = requestLine.indexOf(' ');
+        int targetEnd = requestLine.lastIndexOf(' ');
+        if (methodEnd <= 0 || targetEnd == methodEnd) {
+            throw new Rejected(400, "Malformed request line: " + requestLine);
+        }
+        var method = requestLine.substring(0, methodEnd);
+        var target = requestLine.substring(methodEnd + 1, targetEnd);
+        var protocol = requestLine.substring(targetEnd + 1);
+        if (!protocol.equals("HTTP/1.1") && !protocol.equals("HTTP/1.0")) {
+            throw new Rejected(protocol.startsWith("HTTP/") ? 505 : 400, "Unsupported protocol: " + protocol);
+        }
+        URI uri;
+        try {
+            uri = new URI(target);
+        } catch (URISyntaxException e) {
+            throw new Rejected(400, "Malformed request target: " + target);
+        }
+
+        var headers = new Headers();
+        for (int i = 1; i < lines.length; i++) {
+            var line = lines[i];
+            int colon = line.indexOf(':');
+            if (colon <= 0 || !isToken(line, colon)) {
+                // Also rejects obsolete line folding, continuation lines start with whitespace
+                throw new Rejected(400, "Malformed header line: " + line);
+            }
+            var value = line.substring(colon + 1).trim();
+            if (hasControl(value)) {
+                // Bare CR or LF inside a line, Headers would refuse them and they could smuggle a header through
+                throw new Rejected(400, "Control character in header " + line.substring(0, colon));
+            }
+            try {
+                headers.add(line.substring(0, colon), value);
+            } catch (IllegalArgumentException e) {
+                throw new Rejected(400, "Invalid header " + line.substring(0, colon) + ": " + e.getMessage());
+            }
+        }
+
+        if (headers.containsKey("Transfer-encoding")) {
+            throw new Rejected(501, "Request bodies with Transfer-Encoding are not supported");
+        }
+        boolean http11 = protocol.equals("HTTP/1.1");
+        var expect = headers.getFirst("Expect");
+        if (expect != null && (!http11 || !expect.equalsIgnoreCase("100-continue"))) {
+            throw new Rejected(417, "Unsupported expectation: " + expect);
+        }
+        var connection = headers.getFirst("Connection");
+        boolean keepAlive = http11 ? !hasToken(connection, "close") : hasToken(connection, "keep-alive");
+        contentLength = contentLengthOf(headers.get("Content-length"));
+        return new HttpRequest(method, uri, protocol, headers, NO_BODY, keepAlive, expect != null);
+    }
+
+    private int contentLengthOf(List<String> contentLengths) {
+        if (contentLengths == null) {
+            return 0;
+        }
+        long length = -1;
+        for (String value : contentLengths) {
+            long parsed;
+            try {
+                parsed = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new Rejected(400, "Malformed Content-Length: " + value);
+            }
+            if (parsed < 0 || (length >= 0 && parsed != length)) {
+                throw new Rejected(400, "Invalid Content-Length: " + contentLengths);
+            }
+            length = parsed;
+        }
+        if (length > maxBodyBytes) {
+            throw new Rejected(413, "Request body of " + length + " bytes over the limit of " + maxBodyBytes);
+        }
+        return (int) Math.max(0, length);
+    }
+
+    /**
+     * Header names are RFC 7230 tokens, visible ASCII without separators
+     */
+    private static boolean isToken(String line, int end) {
+        for (int i = 0; i < end; i++) {
+            char c = line.charAt(i);
+            if (c <= ' ' || c >= 0x7f || "\"(),/:;<=>?@[\\]{}".indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Control characters other than horizontal tab, which values may contain
+     */
+    private static boolean hasControl(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < ' ' && c != '\t') || c == 0x7f) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasToken(String value, String token) {
+        if (value == null) {
+            return false;
+        }
+        for (String candidate : value.split(",")) {
+            if (candidate.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static final class HttpRequest {
+
+        final String method;
+        final URI uri;
+        final String protocol;
+        final Headers headers;
+        final byte[] body;
+        final boolean keepAlive;
+        final boolean expectsContinue;
+
+        HttpRequest(String method, URI uri, String protocol, Headers headers, byte[] body, boolean keepAlive,
+                    boolean expectsContinue) {
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+            this.headers = headers;
+            this.body = body;
+            this.keepAlive = keepAlive;
+            this.expectsContinue = expectsContinue;
+        }
+
+        HttpRequest withBody(byte[] body) {
+            return new HttpRequest(method, uri, protocol, headers, body, keepAlive, expectsContinue);
+        }
+
+    }
+
+    /**
+     * Request which cannot be served, answered with the status and followed by closing the connection
+     */
+    static final class Rejected extends IllegalStateException {
+
+        private final int status;
+
+        Rejected(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+    }
+
+}
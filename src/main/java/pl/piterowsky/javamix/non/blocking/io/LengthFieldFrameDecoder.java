@@ -0,0 +1,37 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames prefixed with their length as a big endian int, the prefix is not part of the decoded frame
+ */
+class LengthFieldFrameDecoder implements FrameDecoder {
+
+    static final int HEADER_LENGTH = Integer.BYTES;
+
+    private final int maxFrameLength;
+
+    LengthFieldFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer in) {
+        if (in.remaining() < HEADER_LENGTH) {
+            return null;
+        }
+        int start = in.position();
+        int length = in.getInt(start);
+        if (length < 0 || length > maxFrameLength) {
+            throw new IllegalStateException("Frame length " + length + " outside of 0.." + maxFrameLength);
+        }
+        if (in.remaining() < HEADER_LENGTH + length) {
+            return null;
+        }
+        var frame = in.duplicate();
+        frame.position(start + HEADER_LENGTH).limit(start + HEADER_LENGTH + length);
+        in.position(start + HEADER_LENGTH + length);
+        return frame;
+    }
+
+}
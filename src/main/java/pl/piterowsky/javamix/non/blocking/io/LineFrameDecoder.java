@@ -0,0 +1,42 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits on {@code \n}, a trailing {@code \r} is dropped as well. Bytes already scanned are not looked at again.
+ */
+class LineFrameDecoder implements FrameDecoder {
+
+    private final int maxLineLength;
+    private int scanned;
+
+    LineFrameDecoder(int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer in) {
+        int start = in.position();
+        for (int i = start + scanned; i < in.limit(); i++) {
+            if (in.get(i) == '\n') {
+                int end = i > start && in.get(i - 1) == '\r' ? i - 1 : i;
+                checkLength(end - start);
+                scanned = 0;
+                var frame = in.duplicate();
+                frame.limit(end);
+                in.position(i + 1);
+                return frame;
+            }
+        }
+        scanned = in.remaining();
+        checkLength(scanned);
+        return null;
+    }
+
+    private void checkLength(int length) {
+        if (length > maxLineLength) {
+            throw new IllegalStateException("Line longer than " + maxLineLength + " bytes");
+        }
+    }
+
+}
@@ -0,0 +1,459 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exchange of one request read by {@link HttpConnectionHandler}, handlers written for HttpServer work unchanged.
+ * The response is buffered on the handler thread and handed to the event loop in chunks of {@link #CHUNK_SIZE},
+ * writers block while more than the high watermark is waiting to be sent.
+ */
+@Log4j2
+public final class NioHttpExchange extends HttpExchange {
+
+    static final int CHUNK_SIZE = 8 * 1024;
+    private static final long WAIT_MILLIS = 100;
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final HttpConnectionHandler handler;
+    private final Connection connection;
+    private final HttpRequestDecoder.HttpRequest request;
+    private final long maxQueuedBytes;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final AtomicLong submitted = new AtomicLong();
+    private final ResponseStream responseStream = new ResponseStream();
+    private InputStream requestBody;
+    private OutputStream responseBody = responseStream;
+    private int responseCode = -1;
+    private boolean closeConnection;
+    private volatile boolean aborted;
+
+    NioHttpExchange(HttpConnectionHandler handler, Connection connection, HttpRequestDecoder.HttpRequest request,
+                    long maxQueuedBytes) {
+        this.handler = handler;
+        this.connection = connection;
+        this.request = request;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.requestBody = new ByteArrayInputStream(request.body);
+        this.closeConnection = !request.keepAlive;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return request.headers;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return request.uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return request.method;
+    }
+
+    /**
+     * Always null, requests are not split into contexts
+     */
+    @Override
+    public HttpContext getHttpContext() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            requestBody.close();
+            responseBody.close();
+        } catch (IOException e) {
+            log.warn("Could not complete response to {}: {}", connection.getRemoteAddress(), e.getMessage());
+            responseStream.abandon();
+        }
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    /**
+     * Same contract as HttpServer, a positive length is sent as Content-Length, zero switches to chunked encoding
+     * and -1 means there is no body
+     */
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (responseCode >= 0) {
+            throw new IOException("Response headers already sent");
+        }
+        responseCode = rCode;
+        boolean http11 = request.protocol.equals("HTTP/1.1");
+        boolean bodiless = rCode < 200 || rCode == 204 || rCode == 304;
+        var head = new StringBuilder(128).append("HTTP/1.1 ").append(rCode).append(' ').append(reasonPhrase(rCode))
+                .append("\r\n");
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            for (String value : header.getValue()) {
+                if (value.indexOf('\r') >= 0 || value.indexOf('\n') >= 0) {
+                    throw new IllegalArgumentException("Line break in value of header " + header.getKey());
+                }
+                head.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        if (responseLength > 0) {
+            head.append("Content-Length: ").append(responseLength).append("\r\n");
+        } else if (responseLength == 0 && http11) {
+            head.append("Transfer-Encoding: chunked\r\n");
+        } else if (responseLength == 0) {
+            // HTTP/1.0 has no chunked encoding, the end of the body is marked by closing the connection
+            closeConnection = true;
+        } else if (!bodiless) {
+            head.append("Content-Length: 0\r\n");
+        }
+        if (closeConnection) {
+            head.append("Connection: close\r\n");
+        } else if (!http11) {
+            head.append("Connection: keep-alive\r\n");
+        }
+        head.append("\r\n");
+        responseStream.start(head.toString().getBytes(StandardCharsets.ISO_8859_1), responseLength,
+                bodiless || request.method.equals("HEAD"));
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return (InetSocketAddress) connection.getRemoteAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) connection.getChannel().socket().getLocalSocketAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return request.protocol;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, value);
+        }
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            requestBody = i;
+        }
+        if (o != null) {
+            responseBody = o;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    /**
+     * Answers a handler failure with 500 when nothing was sent yet, the connection is closed either way. A response
+     * already under way is abandoned rather than ended, its client must not take what was sent for the whole body.
+     */
+    void fail() {
+        closeConnection = true;
+        if (responseCode >= 0) {
+            abandon();
+            return;
+        }
+        try {
+            sendResponseHeaders(500, -1);
+        } catch (IOException e) {
+            // The connection is already gone, closing below still releases it
+        }
+        close();
+    }
+
+    /**
+     * Gives up on the response without ending it, the connection is closed once what was handed over is sent.
+     * For failures after the headers went out, when closing the exchange would end a truncated body normally.
+     */
+    public void abandon() {
+        responseStream.abandon();
+    }
+
+    /**
+     * Called by the event loop when the connection went away, blocked writers give up
+     */
+    void abort() {
+        aborted = true;
+        drained();
+    }
+
+    synchronized void drained() {
+        notifyAll();
+    }
+
+    private synchronized void awaitRoom() throws IOException {
+        while (!aborted && submitted.get() + connection.getPendingBytes() > maxQueuedBytes) {
+            try {
+                wait(WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the connection to drain");
+            }
+        }
+        if (aborted) {
+            throw new IOException("Connection to " + connection.getRemoteAddress() + " closed");
+        }
+    }
+
+    private void submit(byte[] bytes, int length) throws IOException {
+        awaitRoom();
+        var bb = ByteBuffer.wrap(bytes, 0, length);
+        submitted.addAndGet(length);
+        connection.execute(() -> {
+            submitted.addAndGet(-length);
+            if (connection.isOpen()) {
+                connection.write(bb);
+                connection.flush();
+            }
+        });
+    }
+
+    private void complete() {
+        boolean close = closeConnection;
+        connection.execute(() -> handler.exchangeDone(connection, this, close));
+    }
+
+    static String reasonPhrase(int status) {
+        switch (status) {
+            case 100:
+                return "Continue";
+            case 200:
+                return "OK";
+            case 201:
+                return "Created";
+            case 202:
+                return "Accepted";
+            case 204:
+                return "No Content";
+            case 206:
+                return "Partial Content";
+            case 301:
+                return "Moved Permanently";
+            case 302:
+                return "Found";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            case 401:
+                return "Unauthorized";
+            case 403:
+                return "Forbidden";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 408:
+                return "Request Timeout";
+            case 413:
+                return "Payload Too Large";
+            case 417:
+                return "Expectation Failed";
+            case 431:
+                return "Request Header Fields Too Large";
+            case 500:
+                return "Internal Server Error";
+            case 501:
+                return "Not Implemented";
+            case 503:
+                return "Service Unavailable";
+            case 504:
+                return "Gateway Timeout";
+            case 505:
+                return "HTTP Version Not Supported";
+            default:
+                return "Status " + status;
+        }
+    }
+
+    /**
+     * Buffers the head and the body, with chunked encoding every handed over buffer becomes one chunk
+     */
+    private final class ResponseStream extends OutputStream {
+
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        private int headLength;
+        private long remaining = -1;
+        private boolean chunked;
+        private boolean discard;
+        private boolean noBody;
+        private boolean closed;
+
+        void start(byte[] head, long length, boolean discard) throws IOException {
+            this.chunked = length == 0 && request.protocol.equals("HTTP/1.1");
+            this.remaining = length > 0 ? length : -1;
+            this.noBody = length < 0;
+            this.discard = discard;
+            if (head.length > buffer.length) {
+                submit(head, head.length);
+                return;
+            }
+            System.arraycopy(head, 0, buffer, 0, head.length);
+            count = head.length;
+            headLength = head.length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Response stream closed");
+            }
+            if (responseCode < 0) {
+                throw new IOException("Response headers not sent yet");
+            }
+            if (noBody && len > 0) {
+                throw new IOException("Response announced without body");
+            }
+            if (discard) {
+                return;
+            }
+            if (remaining >= 0) {
+                if (len > remaining) {
+                    throw new IOException("More bytes than the announced Content-Length");
+                }
+                remaining -= len;
+            }
+            while (len > 0) {
+                int copied = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, copied);
+                count += copied;
+                off += copied;
+                len -= copied;
+                if (count == buffer.length) {
+                    send(false);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!closed && count > 0) {
+                send(false);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (responseCode < 0 || !discard && remaining > 0) {
+                    // Without headers or with a short body the client cannot tell where this response ends,
+                    // bodies which are never sent, as for HEAD, only announce their length
+                    closeConnection = true;
+                }
+                if (responseCode >= 0 && !aborted) {
+                    send(true);
+                }
+            } finally {
+                complete();
+            }
+        }
+
+        void abandon() {
+            closeConnection = true;
+            if (!closed) {
+                closed = true;
+                complete();
+            }
+        }
+
+        private void send(boolean last) throws IOException {
+            if (!chunked) {
+                if (count > 0) {
+                    // The filled buffer is handed over as it is, the next one is allocated instead of copying
+                    submit(buffer, count);
+                    buffer = new byte[CHUNK_SIZE];
+                }
+            } else {
+                int bodyLength = count - headLength;
+                var size = Integer.toHexString(bodyLength).getBytes(StandardCharsets.US_ASCII);
+                var framed = new byte[headLength + (bodyLength > 0 ? size.length + bodyLength + 4 : 0)
+                        + (last ? LAST_CHUNK.length : 0)];
+                System.arraycopy(buffer, 0, framed, 0, headLength);
+                int pos = headLength;
+                if (bodyLength > 0) {
+                    System.arraycopy(size, 0, framed, pos, size.length);
+                    pos += size.length;
+                    framed[pos++] = '\r';
+                    framed[pos++] = '\n';
+                    System.arraycopy(buffer, headLength, framed, pos, bodyLength);
+                    pos += bodyLength;
+                    framed[pos++] = '\r';
+                    framed[pos++] = '\n';
+                }
+                if (last) {
+                    System.arraycopy(LAST_CHUNK, 0, framed, pos, LAST_CHUNK.length);
+                }
+                if (framed.length > 0) {
+                    submit(framed, framed.length);
+                }
+            }
+            count = 0;
+            headLength = 0;
+        }
+
+    }
+
+}
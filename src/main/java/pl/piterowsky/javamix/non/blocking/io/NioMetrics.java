@@ -0,0 +1,22 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import lombok.Value;
+import pl.piterowsky.javamix.metrics.HistogramSnapshot;
+
+/**
+ * Event loop counters summed over all loops, queue depths are sampled when the snapshot is taken
+ */
+@Value
+public class NioMetrics {
+
+    int eventLoops;
+    int connections;
+    long bytesRead;
+    long bytesWritten;
+    long pendingBytes;
+    int pendingRegistrations;
+    int pendingTasks;
+    HistogramSnapshot iterationNanos;
+    HistogramSnapshot readyKeys;
+
+}
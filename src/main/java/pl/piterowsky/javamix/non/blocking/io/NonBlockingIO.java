@@ -1,93 +1,209 @@
 package pl.piterowsky.javamix.non.blocking.io;
 
+import lombok.extern.log4j.Log4j2;
+import pl.piterowsky.javamix.metrics.Histogram;
+import pl.piterowsky.javamix.metrics.MBeans;
+
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.*;
-
-public class NonBlockingIO {
-
-    private final Map<SocketChannel, Queue<ByteBuffer>> pendingData = new HashMap<>();
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Multi reactor server, the calling thread accepts connections and hands them over to N event loops.
+ * While running it is registered in JMX as {@code pl.piterowsky.javamix:type=NonBlockingIO,name=port-<port>}.
+ */
+@Log4j2
+public class NonBlockingIO implements NonBlockingIOMXBean {
+
+    private final NonBlockingIOOptions options;
+    private final List<EventLoop> eventLoops = new CopyOnWriteArrayList<>();
+    private final AtomicLong totalPendingBytes = new AtomicLong();
+    private final CountDownLatch started = new CountDownLatch(1);
     private ServerSocketChannel ssc;
     private Selector selector;
+    private int nextEventLoop;
+    private volatile boolean running = true;
+
+    public NonBlockingIO() {
+        this(new NonBlockingIOOptions());
+    }
+
+    public NonBlockingIO(NonBlockingIOOptions options) {
+        this.options = options;
+    }
 
     public void start() throws IOException {
         selector = Selector.open();
         ssc = ServerSocketChannel.open();
-        ssc.configureBlocking(false);
-        ssc.register(selector, SelectionKey.OP_READ);
-
-        while (true) {
-            selector.select();
-            var keys = selector.selectedKeys();
-            for (Iterator<SelectionKey> it = keys.iterator(); it.hasNext();) {
-                var sk = it.next();
-                it.remove();
-
-                if (sk.isValid()) {
-                    if (sk.isAcceptable()) {
+        try {
+            ssc.configureBlocking(false);
+            ssc.bind(new InetSocketAddress(options.getPort()));
+            ssc.register(selector, SelectionKey.OP_ACCEPT);
+            startEventLoops();
+        } catch (IOException | RuntimeException | Error e) {
+            ssc.close();
+            selector.close();
+            throw e;
+        } finally {
+            started.countDown();
+        }
+        log.info("Non blocking IO started at port: {} with {} event loops", options.getPort(), eventLoops.size());
+
+        var objectName = MBeans.register("NonBlockingIO", "port-" + ssc.socket().getLocalPort(), this);
+        try {
+            while (running) {
+                selector.select();
+                var keys = selector.selectedKeys();
+                for (Iterator<SelectionKey> it = keys.iterator(); it.hasNext();) {
+                    var sk = it.next();
+                    it.remove();
+
+                    if (sk.isValid() && sk.isAcceptable()) {
                         handleAccept();
-                    } else if (sk.isReadable()) {
-                        handleRead(sk);
-                    } else if (sk.isWritable()) {
-                        handleWrite(sk);
                     }
                 }
             }
+        } finally {
+            MBeans.unregister(objectName);
+            eventLoops.forEach(EventLoop::stop);
+            selector.close();
+            ssc.close();
         }
     }
 
-    private void handleAccept() throws IOException {
-        SocketChannel sc = ssc.accept();
+    /**
+     * Waits for {@link #start()} running on another thread, true once connections are being accepted
+     */
+    public boolean awaitStarted(Duration timeout) throws InterruptedException {
+        return started.await(timeout.toMillis(), TimeUnit.MILLISECONDS) && ssc.isOpen();
+    }
 
-        if (sc != null) {
-            sc.configureBlocking(false);
-            sc.register(selector, SelectionKey.OP_READ);
+    /**
+     * Port connections are accepted at, the one picked by the system when the options asked for port 0.
+     * Only known once {@link #awaitStarted} returned true.
+     */
+    public int localPort() {
+        return ssc.socket().getLocalPort();
+    }
 
-            pendingData.put(sc, new LinkedList<>());
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
         }
     }
 
-    private void handleRead(SelectionKey sk) throws IOException {
-        SocketChannel sc = (SocketChannel) sk.channel();
-        ByteBuffer bb = ByteBuffer.allocate(120);
+    /**
+     * Buffer pool counters summed over all event loops
+     */
+    @Override
+    public BufferPool.Stats getBufferPoolStats() {
+        return eventLoops.stream()
+                .map(EventLoop::bufferPoolStats)
+                .reduce(new BufferPool.Stats(0, 0, 0, 0), BufferPool.Stats::plus);
+    }
 
-        int read = sc.read(bb);
-        if (read == -1) {
-            pendingData.remove(sc);
-            sc.close();
-        } else if (read > 0) {
-            bb.flip();
-            for (int i = 0; i < bb.limit(); i++) {
-                bb.put(i, (byte) Character.toUpperCase((char) bb.get(i)));
+    /**
+     * Bytes read but not yet written back, summed over all connections
+     */
+    public long pendingBytes() {
+        return totalPendingBytes.get();
+    }
+
+    @Override
+    public NioMetrics getMetrics() {
+        var metrics = eventLoops.stream().map(EventLoop::getMetrics).collect(Collectors.toList());
+        return new NioMetrics(
+                eventLoops.size(),
+                eventLoops.stream().mapToInt(EventLoop::connectionCount).sum(),
+                metrics.stream().mapToLong(EventLoopMetrics::getBytesRead).sum(),
+                metrics.stream().mapToLong(EventLoopMetrics::getBytesWritten).sum(),
+                totalPendingBytes.get(),
+                eventLoops.stream().mapToInt(EventLoop::pendingRegistrations).sum(),
+                eventLoops.stream().mapToInt(EventLoop::pendingTasks).sum(),
+                Histogram.snapshot(metrics.stream().map(EventLoopMetrics::getIterationNanos).collect(Collectors.toList())),
+                Histogram.snapshot(metrics.stream().map(EventLoopMetrics::getReadyKeys).collect(Collectors.toList())));
+    }
+
+    public Map<SocketAddress, Long> pendingBytesPerConnection() {
+        Map<SocketAddress, Long> pendingBytes = new HashMap<>();
+        eventLoops.forEach(eventLoop -> eventLoop.collectPendingBytes(pendingBytes));
+        return pendingBytes;
+    }
+
+    /**
+     * All or nothing, loops already running are stopped when a later one cannot be started
+     */
+    private void startEventLoops() throws IOException {
+        try {
+            for (int i = 0; i < options.getEventLoops(); i++) {
+                var eventLoop = new EventLoop(options, totalPendingBytes);
+                var thread = new Thread(eventLoop, "nio-event-loop-" + i);
+                thread.setDaemon(true);
+                thread.start();
+                eventLoops.add(eventLoop);
             }
-            pendingData.get(sc).add(bb);
-            sk.interestOps(SelectionKey.OP_WRITE);
+        } catch (IOException | RuntimeException | Error e) {
+            eventLoops.forEach(EventLoop::stop);
+            eventLoops.clear();
+            throw e;
         }
     }
 
-    private void handleWrite(SelectionKey sk) throws IOException {
-        SocketChannel sc = (SocketChannel) sk.channel();
-        Queue<ByteBuffer> queue = pendingData.get(sc);
-
-        while (!queue.isEmpty()) {
-            ByteBuffer bb = queue.peek();
-            int write = sc.write(bb);
-            if (write == -1) {
-                pendingData.remove(sc);
-                sc.close();
-                return;
-            } else if (bb.hasRemaining()) {
-                return;
-            }
+    private void handleAccept() throws IOException {
+        SocketChannel sc = ssc.accept();
 
-            queue.remove();
+        if (sc == null) {
+            return;
+        }
+        try {
+            sc.configureBlocking(false);
+            // Echoes leave in several writes per request, Nagle would hold the last one until the client's delayed ACK
+            sc.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+            // Only this socket is lost, typically a client which already reset the connection
+            log.debug("Could not set up accepted connection: {}", e.getMessage());
+            closeQuietly(sc);
+            return;
         }
+        chooseEventLoop().register(sc);
+    }
+
+    private static void closeQuietly(SocketChannel sc) {
+        try {
+            sc.close();
+        } catch (IOException e) {
+            log.debug("Could not close connection: {}", e.getMessage());
+        }
+    }
 
-        sk.interestOps(SelectionKey.OP_READ);
+    private EventLoop chooseEventLoop() {
+        if (options.getBalancing() == NonBlockingIOOptions.Balancing.LEAST_LOADED) {
+            EventLoop leastLoaded = eventLoops.get(0);
+            for (EventLoop eventLoop : eventLoops) {
+                if (eventLoop.connectionCount() < leastLoaded.connectionCount()) {
+                    leastLoaded = eventLoop;
+                }
+            }
+            return leastLoaded;
+        }
+        nextEventLoop = (nextEventLoop + 1) % eventLoops.size();
+        return eventLoops.get(nextEventLoop);
     }
 
 }
@@ -0,0 +1,12 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+/**
+ * JMX view of a running {@link NonBlockingIO}
+ */
+public interface NonBlockingIOMXBean {
+
+    NioMetrics getMetrics();
+
+    BufferPool.Stats getBufferPoolStats();
+
+}
@@ -0,0 +1,197 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import com.sun.net.httpserver.HttpHandler;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Tuning knobs of {@link NonBlockingIO}, defaults are good enough for local runs
+ */
+@Getter
+public class NonBlockingIOOptions {
+
+    private int port = 8081;
+    private int eventLoops = Runtime.getRuntime().availableProcessors();
+    private Balancing balancing = Balancing.ROUND_ROBIN;
+    private int readBufferSize = 1024;
+    private int maxPooledBuffersPerClass = 256;
+    private ByteTransform transform = ByteTransform.asciiUpperCase();
+    private int maxWriteBuffers = 64;
+    private long lowWatermark = 16 * 1024;
+    private long highWatermark = 64 * 1024;
+    private long maxTotalPendingBytes = 256 * 1024 * 1024;
+    private Duration idleTimeout = Duration.ofMinutes(5);
+    private Duration readTimeout = Duration.ZERO;
+    private Duration writeTimeout = Duration.ofSeconds(30);
+    private Duration timerTick = Duration.ofMillis(100);
+    private int timerWheelSize = 512;
+    private int maxHeaderBytes = 8 * 1024;
+    private int maxBodyBytes = 1024 * 1024;
+    private Supplier<? extends ConnectionHandler> handlerFactory;
+
+    public NonBlockingIOOptions port(int port) {
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("Port out of range: " + port);
+        }
+        this.port = port;
+        return this;
+    }
+
+    public NonBlockingIOOptions eventLoops(int eventLoops) {
+        if (eventLoops < 1) {
+            throw new IllegalArgumentException("At least one event loop is required, got " + eventLoops);
+        }
+        this.eventLoops = eventLoops;
+        return this;
+    }
+
+    public NonBlockingIOOptions balancing(Balancing balancing) {
+        this.balancing = balancing;
+        return this;
+    }
+
+    public NonBlockingIOOptions readBufferSize(int readBufferSize) {
+        if (readBufferSize < 1) {
+            throw new IllegalArgumentException("Read buffer size must be positive, got " + readBufferSize);
+        }
+        this.readBufferSize = readBufferSize;
+        return this;
+    }
+
+    public NonBlockingIOOptions maxPooledBuffersPerClass(int maxPooledBuffersPerClass) {
+        if (maxPooledBuffersPerClass < 0) {
+            throw new IllegalArgumentException("Pool size cannot be negative, got " + maxPooledBuffersPerClass);
+        }
+        this.maxPooledBuffersPerClass = maxPooledBuffersPerClass;
+        return this;
+    }
+
+    public NonBlockingIOOptions transform(ByteTransform transform) {
+        this.transform = transform;
+        return this;
+    }
+
+    /**
+     * Protocol of accepted connections, called once per connection.
+     * Without it every chunk read is echoed back through the {@link #transform(ByteTransform) transform}.
+     */
+    public NonBlockingIOOptions handler(Supplier<? extends ConnectionHandler> handlerFactory) {
+        this.handlerFactory = handlerFactory;
+        return this;
+    }
+
+    /**
+     * Serves files with the line based protocol of {@link StaticFileHandler} instead of echoing
+     */
+    public NonBlockingIOOptions staticFiles(StaticFiles files) {
+        return handler(() -> new StaticFileHandler(files));
+    }
+
+    /**
+     * Speaks HTTP/1.1 with keep-alive and pipelining, handlers run on the executor and may block.
+     * Uses the {@link #httpLimits limits} and watermarks set when a connection is accepted.
+     */
+    public NonBlockingIOOptions http(HttpHandler handler, Executor executor) {
+        return handler(() -> new HttpConnectionHandler(handler, executor, this));
+    }
+
+    /**
+     * Requests with a longer head are answered with 431, with a longer body with 413
+     */
+    public NonBlockingIOOptions httpLimits(int maxHeaderBytes, int maxBodyBytes) {
+        if (maxHeaderBytes < 64 || maxBodyBytes < 0) {
+            throw new IllegalArgumentException("Expected at least 64 header bytes and non negative body limit, got "
+                    + maxHeaderBytes + " and " + maxBodyBytes);
+        }
+        this.maxHeaderBytes = maxHeaderBytes;
+        this.maxBodyBytes = maxBodyBytes;
+        return this;
+    }
+
+    /**
+     * Upper bound of buffers flushed by one gathering write, the kernel caps it at IOV_MAX (1024 on Linux)
+     */
+    public NonBlockingIOOptions maxWriteBuffers(int maxWriteBuffers) {
+        if (maxWriteBuffers < 1 || maxWriteBuffers > 1024) {
+            throw new IllegalArgumentException("Write buffers limit must be within 1..1024, got " + maxWriteBuffers);
+        }
+        this.maxWriteBuffers = maxWriteBuffers;
+        return this;
+    }
+
+    /**
+     * A connection stops being read once it has {@code high} unsent bytes queued and resumes at {@code low}
+     */
+    public NonBlockingIOOptions watermarks(long low, long high) {
+        if (low < 0 || high < 1 || low > high) {
+            throw new IllegalArgumentException("Expected 0 <= low <= high and high > 0, got " + low + " and " + high);
+        }
+        this.lowWatermark = low;
+        this.highWatermark = high;
+        return this;
+    }
+
+    /**
+     * Above this many unsent bytes across all connections the largest offenders get closed
+     */
+    public NonBlockingIOOptions maxTotalPendingBytes(long maxTotalPendingBytes) {
+        if (maxTotalPendingBytes < 1) {
+            throw new IllegalArgumentException("Pending bytes limit must be positive, got " + maxTotalPendingBytes);
+        }
+        this.maxTotalPendingBytes = maxTotalPendingBytes;
+        return this;
+    }
+
+    /**
+     * Closes connections without any read or write for the given time, {@link Duration#ZERO} disables it
+     */
+    public NonBlockingIOOptions idleTimeout(Duration idleTimeout) {
+        this.idleTimeout = requireNotNegative(idleTimeout);
+        return this;
+    }
+
+    /**
+     * Closes connections which sent nothing for the given time while the server was willing to read
+     */
+    public NonBlockingIOOptions readTimeout(Duration readTimeout) {
+        this.readTimeout = requireNotNegative(readTimeout);
+        return this;
+    }
+
+    /**
+     * Closes connections whose queued output made no progress for the given time
+     */
+    public NonBlockingIOOptions writeTimeout(Duration writeTimeout) {
+        this.writeTimeout = requireNotNegative(writeTimeout);
+        return this;
+    }
+
+    public NonBlockingIOOptions timerWheel(Duration tick, int wheelSize) {
+        if (tick.toMillis() < 1 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Expected tick of at least 1ms and power of two wheel size, got "
+                    + tick + " and " + wheelSize);
+        }
+        this.timerTick = tick;
+        this.timerWheelSize = wheelSize;
+        return this;
+    }
+
+    private static Duration requireNotNegative(Duration duration) {
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException("Timeout cannot be negative, got " + duration);
+        }
+        return duration;
+    }
+
+    /**
+     * How the acceptor picks an event loop for a freshly accepted connection
+     */
+    public enum Balancing {
+        ROUND_ROBIN,
+        LEAST_LOADED
+    }
+
+}
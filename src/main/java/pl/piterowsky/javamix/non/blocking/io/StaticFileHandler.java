@@ -0,0 +1,78 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Line based file protocol, every {@code GET <path> [bytes=<range>]} line is answered with
+ * {@code OK <first>-<last>/<size>} followed by the bytes or with {@code ERR <code> <reason>}
+ */
+@Log4j2
+class StaticFileHandler implements ConnectionHandler {
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+    private final StaticFiles files;
+    private final StringBuilder line = new StringBuilder();
+
+    StaticFileHandler(StaticFiles files) {
+        this.files = files;
+    }
+
+    @Override
+    public void onRead(Connection connection, ByteBuffer bb) {
+        try {
+            for (int i = bb.position(); i < bb.limit(); i++) {
+                var b = (char) (bb.get(i) & 0xFF);
+                if (b == '\n') {
+                    handleLine(connection, line.toString().trim());
+                    line.setLength(0);
+                } else if (line.length() < MAX_LINE_LENGTH) {
+                    line.append(b);
+                } else {
+                    respond(connection, "ERR 414 Request line too long");
+                    connection.closeWhenFlushed();
+                    return;
+                }
+            }
+        } finally {
+            connection.release(bb);
+        }
+    }
+
+    private void handleLine(Connection connection, String request) {
+        var parts = request.split(" ");
+        if (parts.length < 2 || parts.length > 3 || !"GET".equals(parts[0])) {
+            respond(connection, "ERR 400 Bad request");
+            return;
+        }
+        try {
+            var file = files.lookup(parts[1]);
+            if (file == null) {
+                respond(connection, "ERR 404 Not found");
+                return;
+            }
+            var range = parts.length == 3 ? ByteRange.parse(parts[2], file.getSize()) : ByteRange.full(file.getSize());
+            if (range == null) {
+                respond(connection, "ERR 416 Range not satisfiable");
+                return;
+            }
+            respond(connection, "OK " + range.getFirst() + "-" + range.getLast() + "/" + file.getSize());
+            files.send(connection, file, range);
+        } catch (IOException e) {
+            log.warn("Could not serve {}: {}", parts[1], e.getMessage());
+            respond(connection, "ERR 500 Internal error");
+        }
+    }
+
+    private static void respond(Connection connection, String status) {
+        var bytes = (status + "\n").getBytes(StandardCharsets.US_ASCII);
+        var bb = connection.allocate(bytes.length);
+        bb.put(bytes).flip();
+        connection.write(bb);
+    }
+
+}
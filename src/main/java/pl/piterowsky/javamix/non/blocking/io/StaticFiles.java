@@ -0,0 +1,226 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves files below a root directory without copying them through the heap.
+ * Small files are memory mapped once and shared by all event loops, larger ones go out with {@link FileRegion}s
+ * which share one open channel per file. Lookups are lock free, mappings are bounded by total size and the least
+ * recently used ones get dropped first.
+ * <p>
+ * Lookups stat the file and misses open or map it on the calling event loop thread, which suits a local disk whose
+ * metadata sits in the page cache but not network file systems. Files must not be truncated while being served:
+ * a queued region then fails its connection, but touching a mapped page past the new end kills the JVM with SIGBUS.
+ * Serve files which change only by being replaced, a new file under the same name is mapped afresh.
+ */
+@Log4j2
+public class StaticFiles {
+
+    private final Path root;
+    private final long maxMappedFileSize;
+    private final long maxMappedBytes;
+    private final Map<Path, MappedFile> mapped = new ConcurrentHashMap<>();
+    private final Map<Path, OpenFile> channels = new ConcurrentHashMap<>();
+    private final AtomicLong mappedBytes = new AtomicLong();
+
+    public StaticFiles(Path root) {
+        this(root, 256 * 1024, 64 * 1024 * 1024);
+    }
+
+    public StaticFiles(Path root, long maxMappedFileSize, long maxMappedBytes) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxMappedFileSize = maxMappedFileSize;
+        this.maxMappedBytes = maxMappedBytes;
+    }
+
+    public long mappedBytes() {
+        return mappedBytes.get();
+    }
+
+    /**
+     * @return the file or null when it does not exist, is not a regular file or lies outside of the root
+     */
+    StaticFile lookup(String requestPath) throws IOException {
+        Path path;
+        try {
+            path = root.resolve(requestPath.startsWith("/") ? requestPath.substring(1) : requestPath).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        if (!path.startsWith(root)) {
+            return null;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (size > maxMappedFileSize) {
+            return new StaticFile(path, size, lastModified, null);
+        }
+        return new StaticFile(path, size, lastModified, mapped(path, size, lastModified));
+    }
+
+    /**
+     * Queues the range of the file on the connection, mapped files as read only views and the rest as file regions
+     */
+    void send(Connection connection, StaticFile file, ByteRange range) throws IOException {
+        if (range.length() <= 0) {
+            return;
+        }
+        if (file.mapped != null) {
+            var view = file.mapped.duplicate();
+            view.limit((int) range.getLast() + 1).position((int) range.getFirst());
+            connection.write(view);
+        } else {
+            var open = acquire(file);
+            connection.write(new FileRegion(open.channel, range.getFirst(), range.length(), () -> release(open)));
+        }
+    }
+
+    /**
+     * The channel of the file shared by all its queued regions, pipelined downloads of one file hold a single
+     * descriptor. A file modified since it was opened gets a new channel, regions of the old one keep it open.
+     */
+    private OpenFile acquire(StaticFile file) throws IOException {
+        try {
+            return channels.compute(file.path, (path, current) -> {
+                var open = current != null && current.lastModified == file.lastModified
+                        ? current
+                        : new OpenFile(path, file.lastModified);
+                open.references++;
+                return open;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void release(OpenFile open) {
+        // Reference counts change under the lock of the map bin, so a release never races an acquire
+        channels.compute(open.path, (path, current) -> {
+            if (--open.references > 0) {
+                return current;
+            }
+            open.close();
+            return current == open ? null : current;
+        });
+    }
+
+    private MappedByteBuffer mapped(Path path, long size, long lastModified) throws IOException {
+        var cached = mapped.get(path);
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            cached.lastAccess = System.nanoTime();
+            return cached.buffer;
+        }
+        MappedByteBuffer buffer;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        var previous = mapped.put(path, new MappedFile(buffer, size, lastModified));
+        mappedBytes.addAndGet(size - (previous != null ? previous.size : 0));
+        evictOverBudget();
+        return buffer;
+    }
+
+    // Misses are rare compared to hits, a linear scan keeps the hit path free of any bookkeeping but a timestamp
+    private void evictOverBudget() {
+        while (mappedBytes.get() > maxMappedBytes) {
+            Map.Entry<Path, MappedFile> eldest = null;
+            for (Map.Entry<Path, MappedFile> entry : mapped.entrySet()) {
+                if (eldest == null || entry.getValue().lastAccess < eldest.getValue().lastAccess) {
+                    eldest = entry;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            if (mapped.remove(eldest.getKey(), eldest.getValue())) {
+                // The mapping itself is released by GC once no queued view refers to it
+                mappedBytes.addAndGet(-eldest.getValue().size);
+                log.debug("Unmapped {}", eldest.getKey());
+            }
+        }
+    }
+
+    @Getter
+    static final class StaticFile {
+
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+        private final MappedByteBuffer mapped;
+
+        private StaticFile(Path path, long size, long lastModified, MappedByteBuffer mapped) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.mapped = mapped;
+        }
+
+    }
+
+    private static final class OpenFile {
+
+        private final Path path;
+        private final long lastModified;
+        private final FileChannel channel;
+        private int references;
+
+        private OpenFile(Path path, long lastModified) {
+            this.path = path;
+            this.lastModified = lastModified;
+            try {
+                this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Could not close {}: {}", path, e.getMessage());
+            }
+        }
+
+    }
+
+    private static final class MappedFile {
+
+        private final MappedByteBuffer buffer;
+        private final long size;
+        private final long lastModified;
+        private volatile long lastAccess = System.nanoTime();
+
+        private MappedFile(MappedByteBuffer buffer, long size, long lastModified) {
+            this.buffer = buffer;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+    }
+
+}
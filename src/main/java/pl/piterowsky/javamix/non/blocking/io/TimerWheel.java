@@ -0,0 +1,121 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel driven by the owning event loop, schedule and cancel are O(1).
+ * Timeouts are intrusive list nodes meant to be reused, so re-arming a timer never allocates.
+ * Deadlines are rounded up to the tick, not thread safe.
+ */
+class TimerWheel {
+
+    private final Timeout<?>[] buckets;
+    private final int mask;
+    private final long tickMillis;
+    private long currentTick;
+    private int size;
+
+    TimerWheel(int wheelSize, long tickMillis, long nowMillis) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two, got " + wheelSize);
+        }
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick must be at least 1ms, got " + tickMillis);
+        }
+        this.buckets = new Timeout<?>[wheelSize];
+        this.mask = wheelSize - 1;
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    void schedule(Timeout<?> timeout, long deadlineMillis) {
+        if (timeout.isScheduled()) {
+            cancel(timeout);
+        }
+        long deadlineTick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        int bucket = (int) (deadlineTick & mask);
+        timeout.deadlineTick = deadlineTick;
+        timeout.bucket = bucket;
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+        size++;
+    }
+
+    void cancel(Timeout<?> timeout) {
+        if (!timeout.isScheduled()) {
+            return;
+        }
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        size--;
+    }
+
+    /**
+     * Fires every timeout whose deadline passed, handlers may re-schedule the timeout they receive
+     */
+    void advance(long nowMillis, Consumer<Timeout<?>> expired) {
+        long targetTick = nowMillis / tickMillis;
+        long lastTick = Math.min(targetTick, currentTick + buckets.length);
+        for (long tick = currentTick + 1; tick <= lastTick; tick++) {
+            Timeout<?> timeout = buckets[(int) (tick & mask)];
+            while (timeout != null) {
+                var next = timeout.next;
+                if (timeout.deadlineTick <= targetTick) {
+                    cancel(timeout);
+                    expired.accept(timeout);
+                }
+                timeout = next;
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick);
+    }
+
+    /**
+     * How long the loop may block before the next tick is due, 0 when nothing is scheduled
+     */
+    long millisToNextTick(long nowMillis) {
+        if (size == 0) {
+            return 0;
+        }
+        return Math.max(1, (currentTick + 1) * tickMillis - nowMillis);
+    }
+
+    int size() {
+        return size;
+    }
+
+    static final class Timeout<T> {
+
+        private final T attachment;
+        private Timeout<?> prev;
+        private Timeout<?> next;
+        private long deadlineTick;
+        private int bucket = -1;
+
+        Timeout(T attachment) {
+            this.attachment = attachment;
+        }
+
+        T attachment() {
+            return attachment;
+        }
+
+        boolean isScheduled() {
+            return bucket >= 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,22 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Default protocol, every read chunk goes through the transform and straight back to the client
+ */
+class TransformEchoHandler implements ConnectionHandler {
+
+    private final ByteTransform transform;
+
+    TransformEchoHandler(ByteTransform transform) {
+        this.transform = transform;
+    }
+
+    @Override
+    public void onRead(Connection connection, ByteBuffer bb) {
+        transform.apply(bb);
+        connection.write(bb);
+    }
+
+}
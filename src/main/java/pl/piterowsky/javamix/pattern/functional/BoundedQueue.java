@@ -0,0 +1,120 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free bounded queue for many producers and many consumers, the array based design by Dmitry Vyukov.
+ * Every slot carries a sequence number telling whose turn it is, so producers and consumers only ever race on
+ * their own counter and a full or empty queue is detected without locking.
+ *
+ * @param <E> element type, nulls are not allowed
+ */
+final class BoundedQueue<E> {
+
+    private final Object[] items;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The capacity is rounded up to a power of two
+     */
+    BoundedQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be within 1..2^30, got " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        this.items = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false when the queue is full
+     */
+    boolean offer(E item) {
+        if (item == null) {
+            throw new IllegalArgumentException("Null elements are not supported");
+        }
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items[index] = item;
+                    // Publishes the item, consumers read the sequence before the slot
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * @return null when the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    var item = (E) items[index];
+                    items[index] = null;
+                    // Hands the slot to the producer one lap ahead
+                    sequences.set(index, position + mask + 1);
+                    return item;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Moves up to {@code max} elements into {@code target} starting at index 0
+     *
+     * @return number of elements moved
+     */
+    int drainTo(Object[] target, int max) {
+        int count = 0;
+        while (count < max) {
+            var item = poll();
+            if (item == null) {
+                break;
+            }
+            target[count++] = item;
+        }
+        return count;
+    }
+
+    /**
+     * Approximate while producers or consumers are active
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, items.length));
+    }
+
+    int capacity() {
+        return items.length;
+    }
+
+}
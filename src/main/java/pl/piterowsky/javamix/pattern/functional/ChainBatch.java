@@ -0,0 +1,177 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Pushes many subjects through one chain of steps, split into chunks run on a fork-join pool.
+ * Steps are applied in a loop, nothing is logged per subject: subjects which went through the whole chain are
+ * counted once per chunk and one subject in {@link #sampleEvery} is traced at debug level. Every subject passes
+ * every step unless one throws, so a single count stands for all of the steps.
+ *
+ * @param <T> subject passed along the chain
+ */
+@Log4j2
+public final class ChainBatch<T> {
+
+    static final int DEFAULT_CHUNK_SIZE = 4096;
+    static final int DEFAULT_SAMPLE_EVERY = 1 << 16;
+
+    private final UnaryOperator<T>[] steps;
+    private final LongAdder completed = new LongAdder();
+    private final AtomicLong sequence = new AtomicLong();
+    private final RangeSplitter splitter = new RangeSplitter(DEFAULT_CHUNK_SIZE);
+    private int sampleEvery = DEFAULT_SAMPLE_EVERY;
+
+    @SuppressWarnings("unchecked")
+    public ChainBatch(List<? extends UnaryOperator<T>> steps) {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("A chain needs at least one step");
+        }
+        this.steps = steps.toArray(new UnaryOperator[0]);
+    }
+
+    public ChainBatch<T> pool(ForkJoinPool pool) {
+        splitter.pool(pool);
+        return this;
+    }
+
+    /**
+     * Subjects run by one task without splitting further, small enough to keep every core busy until the end
+     */
+    public ChainBatch<T> chunkSize(int chunkSize) {
+        splitter.chunkSize(chunkSize);
+        return this;
+    }
+
+    /**
+     * One subject in this many has its transitions logged at debug level
+     */
+    public ChainBatch<T> sampleEvery(int sampleEvery) {
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("Sampling interval must be positive, got " + sampleEvery);
+        }
+        this.sampleEvery = sampleEvery;
+        return this;
+    }
+
+    /**
+     * The result of every subject at the index of the subject, the input list is not modified
+     */
+    public List<T> applyAll(List<T> subjects) {
+        var source = subjects instanceof RandomAccess ? subjects : new ArrayList<>(subjects);
+        @SuppressWarnings("unchecked")
+        var results = (T[]) new Object[source.size()];
+        splitter.run(results.length, (from, to) -> {
+            long first = sequence.getAndAdd(to - from);
+            int i = from;
+            try {
+                for (; i < to; i++) {
+                    results[i] = applyAt(source.get(i), first + i - from);
+                }
+            } finally {
+                completed.add(i - from);
+            }
+        });
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * Results are handed to the sink from many threads at once and in no particular order
+     *
+     * @return number of subjects run through the chain
+     */
+    public long applyAll(Spliterator<T> subjects, Consumer<? super T> sink) {
+        return splitter.pool().invoke(new SpliteratorTask(subjects, sink));
+    }
+
+    public T apply(T subject) {
+        var current = subject;
+        for (UnaryOperator<T> step : steps) {
+            current = step.apply(current);
+        }
+        return current;
+    }
+
+    /**
+     * Subjects which went through the whole chain since the batch was created. Chunks are counted once finished,
+     * so the count lags behind a batch still running. A chunk whose step threw counts the subjects before the failure.
+     */
+    public long completed() {
+        return completed.sum();
+    }
+
+    private T traced(T subject) {
+        var current = subject;
+        for (int i = 0; i < steps.length; i++) {
+            var next = steps[i].apply(current);
+            log.debug("Step {} of {} turned {} into {}", i + 1, steps.length, current, next);
+            current = next;
+        }
+        return current;
+    }
+
+    /**
+     * Subjects whose sequence number is a multiple of the sampling interval are traced
+     */
+    private T applyAt(T subject, long sequenceNumber) {
+        return sequenceNumber % sampleEvery == 0 && log.isDebugEnabled() ? traced(subject) : apply(subject);
+    }
+
+    private final class SpliteratorTask extends RecursiveTask<Long> {
+
+        private final Spliterator<T> subjects;
+        private final Consumer<? super T> sink;
+
+        SpliteratorTask(Spliterator<T> subjects, Consumer<? super T> sink) {
+            this.subjects = subjects;
+            this.sink = sink;
+        }
+
+        @Override
+        protected Long compute() {
+            // Unsized sources report Long.MAX_VALUE and are split for as long as they allow it
+            var prefix = subjects.estimateSize() > splitter.chunkSize() ? subjects.trySplit() : null;
+            if (prefix == null) {
+                return runChunk();
+            }
+            var left = new SpliteratorTask(prefix, sink);
+            left.fork();
+            long right = new SpliteratorTask(subjects, sink).compute();
+            return left.join() + right;
+        }
+
+        private long runChunk() {
+            long size = subjects.getExactSizeIfKnown();
+            // Without a known size chunks running at the same time may share sequence numbers, sampling stays close
+            long first = size >= 0 ? sequence.getAndAdd(size) : sequence.get();
+            long[] processed = new long[1];
+            try {
+                subjects.forEachRemaining(subject -> {
+                    sink.accept(applyAt(subject, first + processed[0]));
+                    processed[0]++;
+                });
+            } finally {
+                if (size < 0) {
+                    sequence.addAndGet(processed[0]);
+                }
+                completed.add(processed[0]);
+            }
+            return processed[0];
+        }
+
+    }
+
+}
@@ -5,19 +5,25 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+@Log4j2
 public class ChainOfResponsibilityPattern {
 
     private static final String LOG_TRANSITION_MESSAGE = "Transition from {} to {}";
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
         // Imperative way
         var imperativeSubject = new Subject();
         var imperativeChain = new ImperativeWay.Step1();
         imperativeChain.andThen(new ImperativeWay.Step2()).andThen(new ImperativeWay.Step3());
-        imperativeChain.applyTo(imperativeSubject);
+        log.info("Imperative way - final state {}", imperativeChain.applyTo(imperativeSubject).getCurrentState());
 
         // Functional way
         var functionalSubject = new Subject();
@@ -26,30 +32,54 @@ public class ChainOfResponsibilityPattern {
                 .andThen(FunctionalWay::doStep1)
                 .andThen(FunctionalWay::doStep2)
                 .andThen(FunctionalWay::doStep3);
-        functionalChain.apply(functionalSubject);
+        log.info("Functional way - final state {}", functionalChain.apply(functionalSubject).getCurrentState());
+
+        // Batch way
+        var subjects = Stream.generate(Subject::new).limit(1_000_000).collect(Collectors.toList());
+        var batch = new ChainBatch<>(FunctionalWay.TRANSITIONS);
+        batch.applyAll(subjects);
+        log.info("Batch way - {} subjects, {} completed", subjects.size(), batch.completed());
+
+        // Staged way, every step on threads of its own
+        try (var pipeline = StagedPipeline.<Subject>builder().stages(FunctionalWay.TRANSITIONS, 2).start()) {
+            for (int i = 0; i < 100_000; i++) {
+                pipeline.submit(new Subject());
+            }
+            pipeline.awaitIdle(Duration.ofSeconds(10));
+            pipeline.stats().forEach(stats -> log.info("Staged way - {}", stats));
+        }
     }
 
     @Log4j2(topic = "FunctionalWay")
     @NoArgsConstructor(access = AccessLevel.PRIVATE)
     static class FunctionalWay {
 
-        private static Subject doStep1(Subject s) {
+        /**
+         * The steps as one list, for {@link ChainBatch} and {@link StagedPipeline} which call them one by one
+         */
+        static final List<UnaryOperator<Subject>> TRANSITIONS = List.of(
+                FunctionalWay::doStep1,
+                FunctionalWay::doStep2,
+                FunctionalWay::doStep3);
+
+        // Transitions are logged at debug level, at info a batch of a million subjects spends its time logging
+        static Subject doStep1(Subject s) {
             var newState = State.STATE_1;
-            log.info("Initial state {}", newState);
+            log.debug("Initial state {}", newState);
             s.setCurrentState(newState);
             return s;
         }
 
-        private static Subject doStep2(Subject s) {
+        static Subject doStep2(Subject s) {
             var newState = State.STATE_2;
-            log.info(LOG_TRANSITION_MESSAGE, s.getCurrentState(), newState);
+            log.debug(LOG_TRANSITION_MESSAGE, s.getCurrentState(), newState);
             s.setCurrentState(newState);
             return s;
         }
 
-        private static Subject doStep3(Subject s) {
+        static Subject doStep3(Subject s) {
             var newState = State.STATE_3;
-            log.info(LOG_TRANSITION_MESSAGE, s.getCurrentState(), newState);
+            log.debug(LOG_TRANSITION_MESSAGE, s.getCurrentState(), newState);
             s.setCurrentState(newState);
             return s;
         }
@@ -72,8 +102,24 @@ public class ChainOfResponsibilityPattern {
             protected abstract Subject doStep(Subject subject);
 
             public Subject applyTo(Subject subject) {
-                var updatedSubject = doStep(subject);
-                return nextStep != null ? nextStep.applyTo(updatedSubject) : updatedSubject;
+                // A loop rather than recursion, long chains would otherwise grow the stack with every step
+                var updatedSubject = subject;
+                for (var step = this; step != null; step = step.nextStep) {
+                    updatedSubject = step.doStep(updatedSubject);
+                }
+                return updatedSubject;
+            }
+
+            /**
+             * Every step from this one on as a separate function, for {@link ChainBatch} and
+             * {@link StagedPipeline} which call them one by one
+             */
+            List<UnaryOperator<Subject>> steps() {
+                List<UnaryOperator<Subject>> steps = new ArrayList<>();
+                for (var step = this; step != null; step = step.nextStep) {
+                    steps.add(step::doStep);
+                }
+                return steps;
             }
 
         }
@@ -83,7 +129,7 @@ public class ChainOfResponsibilityPattern {
             @Override
             protected Subject doStep(Subject subject) {
                 var newState = State.STATE_1;
-                log.info("Initial state {}", newState);
+                log.debug("Initial state {}", newState);
                 subject.setCurrentState(State.STATE_1);
                 return subject;
             }
@@ -95,7 +141,7 @@ public class ChainOfResponsibilityPattern {
             @Override
             protected Subject doStep(Subject subject) {
                 var newState = State.STATE_2;
-                log.info(LOG_TRANSITION_MESSAGE, subject.getCurrentState(), newState);
+                log.debug(LOG_TRANSITION_MESSAGE, subject.getCurrentState(), newState);
                 subject.setCurrentState(newState);
                 return subject;
             }
@@ -107,7 +153,7 @@ public class ChainOfResponsibilityPattern {
             @Override
             protected Subject doStep(Subject subject) {
                 var newState = State.STATE_3;
-                log.info(LOG_TRANSITION_MESSAGE, subject.getCurrentState(), newState);
+                log.debug(LOG_TRANSITION_MESSAGE, subject.getCurrentState(), newState);
                 subject.setCurrentState(State.STATE_3);
                 return subject;
             }
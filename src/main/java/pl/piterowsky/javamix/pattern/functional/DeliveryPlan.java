@@ -0,0 +1,31 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/**
+ * Delivery plan defined by data rather than code, priced the way {@link StrategyPattern.FunctionalWay.Plan} is
+ */
+@Value
+class DeliveryPlan implements StrategyPattern.DeliveryPriceCalculator {
+
+    String name;
+    BigDecimal percentage;
+    BigDecimal fee;
+
+    static DeliveryPlan of(StrategyPattern.FunctionalWay.Plan plan) {
+        return new DeliveryPlan(plan.name().toLowerCase(Locale.ROOT), plan.percentage, StrategyPattern.DELIVERY_FEE);
+    }
+
+    @Override
+    public BigDecimal priceFor(StrategyPattern.Item item) {
+        return priceFor(item.getPrice());
+    }
+
+    BigDecimal priceFor(BigDecimal itemPrice) {
+        return itemPrice.multiply(percentage).add(fee);
+    }
+
+}
@@ -0,0 +1,261 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * Delivery plans resolved by key, so a rate changes by editing a file instead of redeploying. Plans are read
+ * from a properties file:
+ * <pre>
+ * basic.percentage=0.025
+ * basic.fee=1.0
+ * premium.percentage=0
+ * </pre>
+ * The fee defaults to {@link StrategyPattern#DELIVERY_FEE}. Until the file exists the compiled in
+ * {@link StrategyPattern.FunctionalWay.Plan} values are served under their lower case names.
+ * <p>
+ * Readers only ever read one immutable snapshot of every plan, a reload builds a new one and swaps it in, so
+ * lookups never wait for it. A file which fails to parse leaves the previous plans in place. Prices are memoized
+ * per snapshot in a fixed size table where a newer price replaces whatever shared its slot.
+ */
+@Log4j2
+final class DeliveryPlanRegistry implements AutoCloseable {
+
+    static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private final Path file;
+    private final int cacheSize;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private ScheduledExecutorService watcher;
+    private FileTime loadedModified;
+    private long loadedSize = -1;
+
+    DeliveryPlanRegistry(Path file) {
+        this(file, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * The cache size is rounded up to a power of two
+     */
+    DeliveryPlanRegistry(Path file, int cacheSize) {
+        if (cacheSize < 1 || cacheSize > 1 << 30) {
+            throw new IllegalArgumentException("Cache size must be within 1..2^30, got " + cacheSize);
+        }
+        this.file = file;
+        this.cacheSize = cacheSize;
+        var defaults = Arrays.stream(StrategyPattern.FunctionalWay.Plan.values())
+                .map(DeliveryPlan::of)
+                .collect(Collectors.toMap(DeliveryPlan::getName, plan -> plan));
+        snapshot.set(new Snapshot(defaults, 0, cacheSize));
+    }
+
+    Optional<DeliveryPlan> plan(String key) {
+        return Optional.ofNullable(snapshot.get().plans.get(key));
+    }
+
+    Set<String> keys() {
+        return snapshot.get().plans.keySet();
+    }
+
+    /**
+     * Incremented by every reload which changed the plans
+     */
+    long version() {
+        return snapshot.get().version;
+    }
+
+    /**
+     * @throws IllegalArgumentException when no plan has the key
+     */
+    BigDecimal priceFor(String key, StrategyPattern.Item item) {
+        // One read of the snapshot, the plan and the cache always belong together
+        var current = snapshot.get();
+        var plan = current.plans.get(key);
+        if (plan == null) {
+            throw new IllegalArgumentException("No delivery plan " + key + ", known plans are "
+                    + current.plans.keySet());
+        }
+        return current.priceFor(plan, item.getPrice());
+    }
+
+    /**
+     * Reads the file again and swaps in its plans, readers go on with the previous ones meanwhile
+     *
+     * @throws IllegalArgumentException when the file has no plans or a malformed one, nothing changes then
+     */
+    synchronized void reload() throws IOException {
+        var modified = Files.getLastModifiedTime(file);
+        long size = Files.size(file);
+        var properties = new Properties();
+        try (var reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        var plans = parse(properties);
+        loadedModified = modified;
+        loadedSize = size;
+        var previous = snapshot.get();
+        if (plans.equals(previous.plans)) {
+            return;
+        }
+        snapshot.set(new Snapshot(plans, previous.version + 1, cacheSize));
+        log.info("Delivery plans from {} reloaded, version {}: {}", file, previous.version + 1, plans.values());
+    }
+
+    /**
+     * @return true when the file changed since it was last read and was loaded again
+     */
+    synchronized boolean reloadIfModified() throws IOException {
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(file);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        // Edits within the timestamp resolution which keep the size are missed, writing a new file and moving it
+        // over the old one avoids that and readers of a half written file
+        if (modified.equals(loadedModified) && Files.size(file) == loadedSize) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    /**
+     * Checks the file for changes on a daemon thread until the registry is closed, failed reloads are logged
+     */
+    synchronized DeliveryPlanRegistry watch(Duration interval) {
+        if (watcher != null) {
+            throw new IllegalStateException("Already watching " + file);
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(task -> {
+            var thread = new Thread(task, "delivery-plans-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                reloadIfModified();
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Delivery plans from {} not reloaded, keeping version {}", file, version(), e);
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    private static Map<String, DeliveryPlan> parse(Properties properties) {
+        Map<String, BigDecimal> percentages = new HashMap<>();
+        Map<String, BigDecimal> fees = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            int dot = name.lastIndexOf('.');
+            var key = dot > 0 ? name.substring(0, dot) : "";
+            var attribute = name.substring(dot + 1);
+            if (attribute.equals("percentage")) {
+                percentages.put(key, amount(name, properties.getProperty(name)));
+            } else if (attribute.equals("fee")) {
+                fees.put(key, amount(name, properties.getProperty(name)));
+            } else {
+                throw new IllegalArgumentException("Unknown delivery plan property " + name
+                        + ", expected <plan>.percentage or <plan>.fee");
+            }
+        }
+        if (percentages.isEmpty()) {
+            throw new IllegalArgumentException("No delivery plans defined");
+        }
+        for (String key : fees.keySet()) {
+            if (!percentages.containsKey(key)) {
+                throw new IllegalArgumentException("Delivery plan " + key + " has a fee but no percentage");
+            }
+        }
+        Map<String, DeliveryPlan> plans = new HashMap<>();
+        percentages.forEach((key, percentage) -> plans.put(key,
+                new DeliveryPlan(key, percentage, fees.getOrDefault(key, StrategyPattern.DELIVERY_FEE))));
+        return plans;
+    }
+
+    private static BigDecimal amount(String name, String value) {
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed " + name + ": " + value);
+        }
+        if (amount.signum() < 0) {
+            throw new IllegalArgumentException("Negative " + name + ": " + value);
+        }
+        return amount;
+    }
+
+    private static final class Snapshot {
+
+        private final Map<String, DeliveryPlan> plans;
+        private final long version;
+        private final AtomicReferenceArray<CachedPrice> cache;
+        private final int mask;
+
+        Snapshot(Map<String, DeliveryPlan> plans, long version, int cacheSize) {
+            int size = Integer.highestOneBit(cacheSize);
+            size = size < cacheSize ? size << 1 : size;
+            this.plans = Map.copyOf(plans);
+            this.version = version;
+            this.cache = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+        }
+
+        BigDecimal priceFor(DeliveryPlan plan, BigDecimal price) {
+            int hash = 31 * System.identityHashCode(plan) + price.hashCode();
+            int slot = (hash ^ hash >>> 16) & mask;
+            var cached = cache.get(slot);
+            // Plans belong to this snapshot only, so identity tells them apart
+            if (cached != null && cached.plan == plan && cached.price.equals(price)) {
+                return cached.result;
+            }
+            var result = plan.priceFor(price);
+            // Whichever thread writes last keeps the slot, a lost entry only costs a recomputation
+            cache.lazySet(slot, new CachedPrice(plan, price, result));
+            return result;
+        }
+
+    }
+
+    private static final class CachedPrice {
+
+        private final DeliveryPlan plan;
+        private final BigDecimal price;
+        private final BigDecimal result;
+
+        CachedPrice(DeliveryPlan plan, BigDecimal price, BigDecimal result) {
+            this.plan = plan;
+            this.price = price;
+            this.result = result;
+        }
+
+    }
+
+}
@@ -0,0 +1,176 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Delivery prices of a {@link StrategyPattern.FunctionalWay.Plan} for whole columns of item prices at once.
+ * Prices are longs in minor units ({@code 12099} for 120.99 at scale 2) and so are the results, computed with
+ * fixed-point arithmetic: one multiplication and one addition per item, nothing allocated. Large columns are split
+ * into chunks run on a fork-join pool.
+ * <p>
+ * {@link #price(long[], long[])} gives the exact result, the same number {@link BigDecimal} arithmetic gives at
+ * {@link #exactScale()}. {@link #price(long[], long[], int, RoundingMode)} rounds it to any other scale the way
+ * {@link BigDecimal#setScale(int, RoundingMode)} does. Results which do not fit a long throw
+ * {@link ArithmeticException}, like {@link BigDecimal#longValueExact()}.
+ */
+final class DeliveryPriceBatch {
+
+    static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+    private static final int MAX_SCALE = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final int priceScale;
+    private final int exactScale;
+    private final long factor;
+    private final long fee;
+    private final RangeSplitter splitter = new RangeSplitter(DEFAULT_CHUNK_SIZE);
+
+    /**
+     * @param priceScale decimal places of the prices, 2 for cents
+     */
+    DeliveryPriceBatch(StrategyPattern.FunctionalWay.Plan plan, int priceScale) {
+        if (priceScale < 0 || priceScale > MAX_SCALE) {
+            throw new IllegalArgumentException("Price scale must be within 0.." + MAX_SCALE + ", got " + priceScale);
+        }
+        var percentage = plan.percentage;
+        var deliveryFee = StrategyPattern.DELIVERY_FEE;
+        // The scale BigDecimal gives price * percentage + fee, the result is exact at it
+        int productScale = priceScale + percentage.scale();
+        this.exactScale = Math.max(productScale, deliveryFee.scale());
+        if (percentage.scale() < 0 || exactScale > MAX_SCALE) {
+            throw new IllegalArgumentException("Plan " + plan + " cannot be priced in fixed point at scale "
+                    + priceScale);
+        }
+        this.priceScale = priceScale;
+        this.factor = Math.multiplyExact(percentage.unscaledValue().longValueExact(),
+                POWERS_OF_TEN[exactScale - productScale]);
+        this.fee = Math.multiplyExact(deliveryFee.unscaledValue().longValueExact(),
+                POWERS_OF_TEN[exactScale - deliveryFee.scale()]);
+    }
+
+    /**
+     * Item prices as one column of minor units
+     *
+     * @throws ArithmeticException when a price has more decimal places than the scale or does not fit a long
+     */
+    static long[] minorUnits(List<StrategyPattern.Item> items, int scale) {
+        var prices = new long[items.size()];
+        int i = 0;
+        for (StrategyPattern.Item item : items) {
+            prices[i++] = item.getPrice().setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        }
+        return prices;
+    }
+
+    DeliveryPriceBatch pool(ForkJoinPool pool) {
+        splitter.pool(pool);
+        return this;
+    }
+
+    /**
+     * Prices run by one task without splitting further
+     */
+    DeliveryPriceBatch chunkSize(int chunkSize) {
+        splitter.chunkSize(chunkSize);
+        return this;
+    }
+
+    int priceScale() {
+        return priceScale;
+    }
+
+    /**
+     * Scale of the exact results, {@code BigDecimal.valueOf(result, exactScale())} equals the BigDecimal price
+     */
+    int exactScale() {
+        return exactScale;
+    }
+
+    /**
+     * Exact delivery prices at {@link #exactScale()}, {@code results} may be {@code prices} itself
+     */
+    void price(long[] prices, long[] results) {
+        price(prices, results, exactScale, RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * Delivery prices at {@code scale}, rounded with {@code rounding} when it is below {@link #exactScale()}
+     *
+     * @throws ArithmeticException when rounding is {@link RoundingMode#UNNECESSARY} and a result needs it
+     */
+    void price(long[] prices, long[] results, int scale, RoundingMode rounding) {
+        if (results.length < prices.length) {
+            throw new IllegalArgumentException("Room for " + results.length + " results, " + prices.length
+                    + " prices given");
+        }
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Scale must be within 0.." + MAX_SCALE + ", got " + scale);
+        }
+        splitter.run(prices.length, (from, to) -> priceRange(prices, results, from, to, scale, rounding));
+    }
+
+    private void priceRange(long[] prices, long[] results, int from, int to, int scale, RoundingMode rounding) {
+        if (scale >= exactScale) {
+            long up = POWERS_OF_TEN[scale - exactScale];
+            for (int i = from; i < to; i++) {
+                results[i] = Math.multiplyExact(exact(prices[i]), up);
+            }
+        } else {
+            long divisor = POWERS_OF_TEN[exactScale - scale];
+            for (int i = from; i < to; i++) {
+                results[i] = round(exact(prices[i]), divisor, rounding);
+            }
+        }
+    }
+
+    private long exact(long price) {
+        return Math.addExact(Math.multiplyExact(price, factor), fee);
+    }
+
+    /**
+     * {@code value / divisor} rounded like {@link BigDecimal#divide(BigDecimal, RoundingMode)}
+     */
+    static long round(long value, long divisor, RoundingMode rounding) {
+        long quotient = value / divisor;
+        long remainder = value % divisor;
+        if (remainder == 0) {
+            return quotient;
+        }
+        // The remainder has the sign of the value, rounding away from zero moves the quotient the same way
+        long away = value < 0 ? -1 : 1;
+        long twiceRemainder = Math.abs(remainder) * 2;
+        switch (rounding) {
+            case DOWN:
+                return quotient;
+            case UP:
+                return quotient + away;
+            case FLOOR:
+                return value < 0 ? quotient - 1 : quotient;
+            case CEILING:
+                return value > 0 ? quotient + 1 : quotient;
+            case HALF_UP:
+                return twiceRemainder >= divisor ? quotient + away : quotient;
+            case HALF_DOWN:
+                return twiceRemainder > divisor ? quotient + away : quotient;
+            case HALF_EVEN:
+                return twiceRemainder > divisor || twiceRemainder == divisor && (quotient & 1) != 0
+                        ? quotient + away
+                        : quotient;
+            case UNNECESSARY:
+                throw new ArithmeticException("Rounding necessary for " + value + " / " + divisor);
+            default:
+                throw new IllegalArgumentException("Unsupported rounding mode " + rounding);
+        }
+    }
+
+}
@@ -24,18 +24,28 @@ public class FactoryMethodPattern {
         log.info("Imperative bus: {}", imperativeBus);
         log.info("Functional bus: {}", functionalBus);
         log.info("Are equals: {}", imperativeBus.equals(functionalBus));
+
+        // Registry way, one shared instance per type and color
+        var registry = new VehicleRegistry();
+        var registryBus = registry.get(FunctionalWay.VehicleType.BUS, VehicleColor.GREEN);
+        log.info("Registry bus: {}, shared: {}", registryBus, registryBus == registry.get("bus", VehicleColor.GREEN));
     }
 
     static class ImperativeWay {
         public static Vehicle getInstance(VehicleType type, VehicleColor color) {
-            if (VehicleType.CAR.equals(type)) {
-                return new Car(color);
-            } else if (VehicleType.BUS.equals(type)) {
-                return new Bus(color);
-            } else if (VehicleType.TRUCK.equals(type)) {
-                return new Truck(color);
+            if (type == null) {
+                throw new IllegalArgumentException("No support for type " + type);
+            }
+            switch (type) {
+                case CAR:
+                    return new Car(color);
+                case BUS:
+                    return new Bus(color);
+                case TRUCK:
+                    return new Truck(color);
+                default:
+                    throw new IllegalArgumentException("No support for type " + type);
             }
-            throw new IllegalArgumentException("No support for type " + type);
         }
 
         enum VehicleType {
@@ -48,7 +58,7 @@ public class FactoryMethodPattern {
     static class FunctionalWay {
         enum VehicleType {
             CAR(Car::new),
-            BUS(Truck::new),
+            BUS(Bus::new),
             TRUCK(Truck::new);
 
             public final Function<VehicleColor, Vehicle> factory;
@@ -80,11 +90,14 @@ public class FactoryMethodPattern {
         }
     }
 
+    /**
+     * Immutable, {@link VehicleRegistry} hands the same instance to every caller
+     */
     @Data
     @AllArgsConstructor
     abstract static class Vehicle {
 
-        private VehicleColor color;
+        private final VehicleColor color;
     }
 
     enum VehicleColor {
@@ -0,0 +1,83 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs an index range in chunks on a fork-join pool, halving it until a part fits in one chunk. Ranges of a single
+ * chunk run on the calling thread without involving the pool. Shared by the batch runners of this package, which
+ * expose the pool and the chunk size as settings of their own.
+ */
+final class RangeSplitter {
+
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int chunkSize;
+
+    RangeSplitter(int chunkSize) {
+        chunkSize(chunkSize);
+    }
+
+    ForkJoinPool pool() {
+        return pool;
+    }
+
+    void pool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    void chunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, got " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Runs the chunks of {@code [0, size)}, possibly at the same time, and returns once all of them finished
+     */
+    void run(int size, Chunk chunk) {
+        if (size <= chunkSize) {
+            chunk.run(0, size);
+        } else {
+            pool.invoke(new RangeTask(chunk, 0, size, chunkSize));
+        }
+    }
+
+    @FunctionalInterface
+    interface Chunk {
+
+        void run(int from, int to);
+
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+
+        private final Chunk chunk;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        RangeTask(Chunk chunk, int from, int to, int chunkSize) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                chunk.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(chunk, from, middle, chunkSize), new RangeTask(chunk, middle, to, chunkSize));
+        }
+
+    }
+
+}
@@ -0,0 +1,24 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import lombok.Value;
+import pl.piterowsky.javamix.metrics.HistogramSnapshot;
+
+/**
+ * State of one {@link StagedPipeline} stage, latency is queue wait plus the step itself in nanoseconds
+ */
+@Value
+public class StageStats {
+
+    String name;
+    int workers;
+    int depth;
+    int capacity;
+    long processed;
+    long failed;
+    /**
+     * Items per second since the previous {@link StagedPipeline#stats()} call, or since the start for the first
+     */
+    double throughput;
+    HistogramSnapshot latency;
+
+}
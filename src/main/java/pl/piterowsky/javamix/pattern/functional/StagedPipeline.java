@@ -0,0 +1,367 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import lombok.extern.log4j.Log4j2;
+import pl.piterowsky.javamix.metrics.Histogram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs every step of a chain as a stage of its own (SEDA), with a bounded queue in front and its own worker
+ * threads. A slow step no longer sets the pace of the others, it gets more workers instead. Workers take up to
+ * {@link Builder#batchSize} items from their queue at once and block while the next queue is full, so a stage
+ * falling behind holds back everything before it down to {@link #submit}.
+ * <p>
+ * Items leave in no particular order once a stage has more than one worker. A step returning null ends the trip
+ * of the item, like a handler which does not pass the request on.
+ *
+ * @param <T> item passed from stage to stage
+ */
+@Log4j2
+public final class StagedPipeline<T> implements AutoCloseable {
+
+    static final int DEFAULT_CAPACITY = 1024;
+    static final int DEFAULT_BATCH_SIZE = 32;
+    private static final int SPINS = 64;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // Top bit of inFlight, closing and admitting change one word so no item gets in after close saw it idle
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final Consumer<? super T> sink;
+    private final int batchSize;
+    private final AtomicLong inFlight = new AtomicLong();
+    private long lastStatsNanos = System.nanoTime();
+    private volatile boolean stopped;
+
+    private StagedPipeline(Builder<T> builder) {
+        this.sink = builder.sink;
+        this.batchSize = builder.batchSize;
+        for (Spec<T> spec : builder.specs) {
+            var stage = new Stage(spec);
+            if (!stages.isEmpty()) {
+                stages.get(stages.size() - 1).next = stage;
+            }
+            stages.add(stage);
+        }
+        stages.forEach(Stage::start);
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Blocks while the first stage is full
+     */
+    public void submit(T item) throws InterruptedException {
+        var envelope = admit(item);
+        int attempt = 0;
+        while (!stages.get(0).queue.offer(envelope)) {
+            if (Thread.interrupted()) {
+                inFlight.decrementAndGet();
+                throw new InterruptedException("Interrupted while waiting for room in the first stage");
+            }
+            backOff(attempt++);
+        }
+    }
+
+    /**
+     * @return false without waiting when the first stage is full
+     */
+    public boolean trySubmit(T item) {
+        if (stages.get(0).queue.offer(admit(item))) {
+            return true;
+        }
+        inFlight.decrementAndGet();
+        return false;
+    }
+
+    /**
+     * Waits until every submitted item reached the sink, failed or was dropped by a step
+     *
+     * @return false when the timeout passed first
+     */
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        int attempt = 0;
+        while ((inFlight.get() & ~CLOSED) > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while waiting for the pipeline to drain");
+            }
+            backOff(attempt++);
+        }
+        return true;
+    }
+
+    /**
+     * Throughput covers the time since the previous call, or since the start for the first one, so polling stats
+     * shows the current rate rather than one averaged over the whole life of the pipeline
+     */
+    public synchronized List<StageStats> stats() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastStatsNanos) / 1e9;
+        lastStatsNanos = now;
+        List<StageStats> stats = new ArrayList<>(stages.size());
+        for (Stage stage : stages) {
+            long processed = stage.processed.sum();
+            double throughput = (processed - stage.processedAtLastStats) / seconds;
+            stage.processedAtLastStats = processed;
+            stats.add(new StageStats(stage.name, stage.threads.size(), stage.queue.size(), stage.queue.capacity(),
+                    processed, stage.failed.sum(), throughput, stage.latency.snapshot()));
+        }
+        return stats;
+    }
+
+    /**
+     * Stops taking items, lets the ones already submitted through and stops the workers
+     */
+    @Override
+    public void close() {
+        inFlight.getAndUpdate(state -> state | CLOSED);
+        try {
+            awaitIdle(Duration.ofNanos(Long.MAX_VALUE));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stopped = true;
+        for (Stage stage : stages) {
+            for (Thread thread : stage.threads) {
+                LockSupport.unpark(thread);
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private Envelope admit(T item) {
+        if (item == null) {
+            throw new IllegalArgumentException("Null items cannot be submitted");
+        }
+        long state;
+        do {
+            state = inFlight.get();
+            if ((state & CLOSED) != 0) {
+                throw new IllegalStateException("Pipeline closed");
+            }
+        } while (!inFlight.compareAndSet(state, state + 1));
+        return new Envelope(item, System.nanoTime());
+    }
+
+    /**
+     * Spins first, a queue which just filled up or ran empty usually changes again within microseconds
+     */
+    private static void backOff(int attempt) {
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else if (attempt < 2 * SPINS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(attempt - 2 * SPINS, 10)));
+        }
+    }
+
+    /**
+     * Travels with the item through every stage, so only submitting allocates
+     */
+    private static final class Envelope {
+
+        Object item;
+        long enqueuedNanos;
+
+        Envelope(Object item, long enqueuedNanos) {
+            this.item = item;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+    }
+
+    private final class Stage {
+
+        private final String name;
+        private final UnaryOperator<T> step;
+        private final BoundedQueue<Envelope> queue;
+        private final List<Thread> threads = new ArrayList<>();
+        private final Histogram latency = new Histogram();
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private long processedAtLastStats;
+        private Stage next;
+
+        Stage(Spec<T> spec) {
+            this.name = spec.name;
+            this.step = spec.step;
+            this.queue = new BoundedQueue<>(spec.capacity);
+            for (int i = 0; i < spec.workers; i++) {
+                var thread = new Thread(this::work, "stage-" + name + "-" + i);
+                thread.setDaemon(true);
+                threads.add(thread);
+            }
+        }
+
+        void start() {
+            threads.forEach(Thread::start);
+        }
+
+        private void work() {
+            var batch = new Object[batchSize];
+            int idle = 0;
+            while (!stopped) {
+                int count = queue.drainTo(batch, batchSize);
+                if (count == 0) {
+                    backOff(idle++);
+                    continue;
+                }
+                idle = 0;
+                for (int i = 0; i < count; i++) {
+                    apply((Envelope) batch[i]);
+                }
+                processed.add(count);
+                for (int i = 0; i < count; i++) {
+                    var envelope = (Envelope) batch[i];
+                    batch[i] = null;
+                    if (envelope.item != null) {
+                        forward(envelope);
+                    }
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void apply(Envelope envelope) {
+            try {
+                envelope.item = step.apply((T) envelope.item);
+            } catch (RuntimeException e) {
+                envelope.item = null;
+                failed(e);
+            }
+            long now = System.nanoTime();
+            latency.record(now - envelope.enqueuedNanos);
+            envelope.enqueuedNanos = now;
+            if (envelope.item == null) {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void forward(Envelope envelope) {
+            if (next == null) {
+                try {
+                    sink.accept((T) envelope.item);
+                } catch (RuntimeException e) {
+                    failed(e);
+                }
+                inFlight.decrementAndGet();
+                return;
+            }
+            int attempt = 0;
+            while (!next.queue.offer(envelope)) {
+                if (stopped) {
+                    return;
+                }
+                backOff(attempt++);
+            }
+        }
+
+        private void failed(RuntimeException e) {
+            failed.increment();
+            long failures = failed.sum();
+            // Logged at 1, 2, 4, 8... failures, a step failing for every item would flood the log otherwise
+            if (Long.bitCount(failures) == 1) {
+                log.warn("Stage {} failed {} times so far", name, failures, e);
+            }
+        }
+
+    }
+
+    private static final class Spec<T> {
+
+        private final String name;
+        private final UnaryOperator<T> step;
+        private final int workers;
+        private final int capacity;
+
+        Spec(String name, UnaryOperator<T> step, int workers, int capacity) {
+            this.name = name;
+            this.step = step;
+            this.workers = workers;
+            this.capacity = capacity;
+        }
+
+    }
+
+    public static final class Builder<T> {
+
+        private final List<Spec<T>> specs = new ArrayList<>();
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private Consumer<? super T> sink = item -> {
+        };
+
+        private Builder() {
+        }
+
+        public Builder<T> stage(String name, UnaryOperator<T> step, int workers) {
+            return stage(name, step, workers, DEFAULT_CAPACITY);
+        }
+
+        public Builder<T> stage(String name, UnaryOperator<T> step, int workers, int capacity) {
+            if (workers < 1) {
+                throw new IllegalArgumentException("Stage " + name + " needs at least one worker, got " + workers);
+            }
+            specs.add(new Spec<>(name, step, workers, capacity));
+            return this;
+        }
+
+        /**
+         * One stage per step named after its position, each with the same number of workers
+         */
+        public Builder<T> stages(List<? extends UnaryOperator<T>> steps, int workers) {
+            for (UnaryOperator<T> step : steps) {
+                stage("step-" + (specs.size() + 1), step, workers);
+            }
+            return this;
+        }
+
+        /**
+         * Items a worker takes from its queue at once
+         */
+        public Builder<T> batchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Receives the items which went through every stage, called by the workers of the last stage at once
+         */
+        public Builder<T> sink(Consumer<? super T> sink) {
+            this.sink = sink;
+            return this;
+        }
+
+        public StagedPipeline<T> start() {
+            if (specs.isEmpty()) {
+                throw new IllegalStateException("A pipeline needs at least one stage");
+            }
+            return new StagedPipeline<>(this);
+        }
+
+    }
+
+}
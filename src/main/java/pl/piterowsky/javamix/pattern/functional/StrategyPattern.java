@@ -3,7 +3,11 @@ package pl.piterowsky.javamix.pattern.functional;
 import lombok.Data;
 import lombok.extern.log4j.Log4j2;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.function.Function;
 
 /**
@@ -14,27 +18,37 @@ import java.util.function.Function;
 @Log4j2
 public class StrategyPattern {
 
-    public static void main(String[] args) {
+    static final BigDecimal DELIVERY_FEE = new BigDecimal("1.0");
+    static final BigDecimal BASIC_PERCENTAGE = new BigDecimal("0.025");
+
+    public static void main(String[] args) throws IOException {
         var item = new Item(1L, BigDecimal.valueOf(120.99));
         log.info("Imperative calc - basic price: {}", new ImperativeWay.BasicDeliveryPriceCalculator().priceFor(item));
         log.info("Functional calc - basic price: {}", FunctionalWay.Plan.BASIC.deliveryPrice.apply(item));
+        var prices = DeliveryPriceBatch.minorUnits(List.of(item), 2);
+        new DeliveryPriceBatch(FunctionalWay.Plan.BASIC, 2).price(prices, prices, 2, RoundingMode.HALF_EVEN);
+        log.info("Batch calc - basic price: {}", BigDecimal.valueOf(prices[0], 2));
+        var registry = new DeliveryPlanRegistry(Path.of("delivery-plans.properties"));
+        registry.reloadIfModified();
+        log.info("Registry calc - basic price: {}", registry.priceFor("basic", item));
     }
 
     static class FunctionalWay {
 
         public enum Plan {
-            BASIC(deliveryPrice("0.025")),
-            PREMIUM(deliveryPrice("0"));
+            BASIC(BASIC_PERCENTAGE),
+            PREMIUM(BigDecimal.ZERO);
 
-            Plan(Function<Item, BigDecimal> deliveryPrice) {
-                this.deliveryPrice = deliveryPrice;
+            Plan(BigDecimal percentage) {
+                this.percentage = percentage;
+                this.deliveryPrice = item -> item.getPrice().multiply(percentage).add(DELIVERY_FEE);
             }
 
+            /**
+             * Share of the item price added to the delivery fee, {@link DeliveryPriceBatch} works from it directly
+             */
+            public final BigDecimal percentage;
             public final Function<Item, BigDecimal> deliveryPrice;
-
-            private static Function<Item, BigDecimal> deliveryPrice(String percentage) {
-                return item -> item.getPrice().multiply(new BigDecimal(percentage)).add(new BigDecimal("1.0"));
-            }
         }
 
     }
@@ -45,7 +59,7 @@ public class StrategyPattern {
 
             @Override
             public BigDecimal priceFor(Item item) {
-                return item.getPrice().multiply(new BigDecimal("0.025")).add(new BigDecimal("1.0"));
+                return item.getPrice().multiply(BASIC_PERCENTAGE).add(DELIVERY_FEE);
             }
 
         }
@@ -54,7 +68,7 @@ public class StrategyPattern {
 
             @Override
             public BigDecimal priceFor(Item item) {
-                return new BigDecimal("1.0");
+                return DELIVERY_FEE;
             }
 
         }
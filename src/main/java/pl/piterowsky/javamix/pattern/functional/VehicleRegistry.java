@@ -0,0 +1,126 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Vehicles are immutable, so one instance per type and color serves every caller (flyweight). They are created
+ * once when their type is registered, after that a lookup is two array reads, or a map read and an array read by
+ * key, and allocates nothing.
+ * <p>
+ * Types from {@link FactoryMethodPattern.FunctionalWay.VehicleType} are registered from the start under their
+ * lower case names. Other types are registered by key with the class alone, its constructor taking a
+ * {@link FactoryMethodPattern.VehicleColor} is turned into a {@link Function} by {@link LambdaMetafactory} once,
+ * which the JIT compiles like a handwritten {@code Van::new}.
+ */
+final class VehicleRegistry {
+
+    private static final FactoryMethodPattern.VehicleColor[] COLORS = FactoryMethodPattern.VehicleColor.values();
+
+    private final FactoryMethodPattern.Vehicle[][] byType;
+    private final Map<String, Registration> byKey = new ConcurrentHashMap<>();
+
+    VehicleRegistry() {
+        var types = FactoryMethodPattern.FunctionalWay.VehicleType.values();
+        Map<FactoryMethodPattern.FunctionalWay.VehicleType, Registration> builtIn =
+                new EnumMap<>(FactoryMethodPattern.FunctionalWay.VehicleType.class);
+        for (FactoryMethodPattern.FunctionalWay.VehicleType type : types) {
+            var registration = new Registration(type.factory);
+            builtIn.put(type, registration);
+            byKey.put(type.name().toLowerCase(Locale.ROOT), registration);
+        }
+        this.byType = new FactoryMethodPattern.Vehicle[types.length][];
+        builtIn.forEach((type, registration) -> byType[type.ordinal()] = registration.flyweights);
+    }
+
+    FactoryMethodPattern.Vehicle get(FactoryMethodPattern.FunctionalWay.VehicleType type,
+                                     FactoryMethodPattern.VehicleColor color) {
+        return byType[type.ordinal()][color.ordinal()];
+    }
+
+    /**
+     * @throws IllegalArgumentException when nothing is registered under the key
+     */
+    FactoryMethodPattern.Vehicle get(String key, FactoryMethodPattern.VehicleColor color) {
+        return registration(key).flyweights[color.ordinal()];
+    }
+
+    /**
+     * A new instance rather than the shared one, for callers which compare vehicles by identity
+     */
+    FactoryMethodPattern.Vehicle create(String key, FactoryMethodPattern.VehicleColor color) {
+        return registration(key).constructor.apply(color);
+    }
+
+    /**
+     * Registers a type whose constructor taking a color is accessible from this package
+     */
+    VehicleRegistry register(String key, Class<? extends FactoryMethodPattern.Vehicle> type) {
+        return register(key, type, MethodHandles.lookup());
+    }
+
+    /**
+     * Registers a type with the lookup of a class which can see its constructor, {@code MethodHandles.lookup()}
+     * of the caller usually
+     *
+     * @throws IllegalArgumentException when the key is taken or the type has no such constructor
+     */
+    VehicleRegistry register(String key, Class<? extends FactoryMethodPattern.Vehicle> type,
+                             MethodHandles.Lookup lookup) {
+        var registration = new Registration(constructor(type, lookup));
+        if (byKey.putIfAbsent(key, registration) != null) {
+            throw new IllegalArgumentException("Vehicle type " + key + " is already registered");
+        }
+        return this;
+    }
+
+    private Registration registration(String key) {
+        var registration = byKey.get(key);
+        if (registration == null) {
+            throw new IllegalArgumentException("No vehicle type " + key + ", registered are " + byKey.keySet());
+        }
+        return registration;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<FactoryMethodPattern.VehicleColor, FactoryMethodPattern.Vehicle> constructor(
+            Class<? extends FactoryMethodPattern.Vehicle> type, MethodHandles.Lookup lookup) {
+        try {
+            var handle = lookup.findConstructor(type, MethodType.methodType(void.class,
+                    FactoryMethodPattern.VehicleColor.class));
+            var site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class), handle,
+                    MethodType.methodType(type, FactoryMethodPattern.VehicleColor.class));
+            return (Function<FactoryMethodPattern.VehicleColor, FactoryMethodPattern.Vehicle>) site.getTarget()
+                    .invokeExact();
+        } catch (NoSuchMethodException | IllegalAccessException | LambdaConversionException e) {
+            throw new IllegalArgumentException(type.getName() + " has no constructor taking a color accessible to "
+                    + lookup.lookupClass().getName(), e);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not link the constructor of " + type.getName(), e);
+        }
+    }
+
+    private static final class Registration {
+
+        private final Function<FactoryMethodPattern.VehicleColor, FactoryMethodPattern.Vehicle> constructor;
+        private final FactoryMethodPattern.Vehicle[] flyweights;
+
+        Registration(Function<FactoryMethodPattern.VehicleColor, FactoryMethodPattern.Vehicle> constructor) {
+            this.constructor = constructor;
+            this.flyweights = new FactoryMethodPattern.Vehicle[COLORS.length];
+            for (FactoryMethodPattern.VehicleColor color : COLORS) {
+                flyweights[color.ordinal()] = constructor.apply(color);
+            }
+        }
+
+    }
+
+}
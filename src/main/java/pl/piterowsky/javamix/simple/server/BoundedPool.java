@@ -0,0 +1,56 @@
+package pl.piterowsky.javamix.simple.server;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Thread safe pool of objects which are costly to create, shared by all request threads. Unlike a thread local it
+ * holds as many objects as were in use at once rather than one per thread ever seen, which matters once every
+ * request runs on a thread of its own. Borrowing takes the most recently returned idle object, whose memory is the
+ * likeliest to still be cached, or creates one. At most {@code capacity} are kept idle, the rest go to the discard
+ * action.
+ */
+final class BoundedPool<T> {
+
+    private final ArrayDeque<T> idle;
+    private final int capacity;
+    private final Supplier<T> factory;
+    private final Consumer<T> discard;
+
+    BoundedPool(int capacity, Supplier<T> factory, Consumer<T> discard) {
+        this.idle = new ArrayDeque<>(capacity);
+        this.capacity = capacity;
+        this.factory = factory;
+        this.discard = discard;
+    }
+
+    /**
+     * Sized for work which keeps a CPU busy, more objects than cores are rarely in use at once
+     */
+    static int defaultCapacity() {
+        return 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    T borrow() {
+        T object;
+        synchronized (idle) {
+            object = idle.pollLast();
+        }
+        return object != null ? object : factory.get();
+    }
+
+    /**
+     * Returns an object borrowed before, each borrowed object must come back at most once
+     */
+    void release(T object) {
+        synchronized (idle) {
+            if (idle.size() < capacity) {
+                idle.addLast(object);
+                return;
+            }
+        }
+        discard.accept(object);
+    }
+
+}
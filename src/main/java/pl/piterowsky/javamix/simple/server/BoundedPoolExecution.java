@@ -0,0 +1,41 @@
+package pl.piterowsky.javamix.simple.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+class BoundedPoolExecution implements ExecutionModel {
+
+    private final ThreadPoolExecutor pool;
+    private final LongAdder rejected = new LongAdder();
+
+    BoundedPoolExecution(int threads, int queueCapacity) {
+        var threadNumber = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> new Thread(task, "simple-server-" + threadNumber.incrementAndGet()),
+                (task, executor) -> {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Request queue is full");
+                });
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        pool.execute(command);
+    }
+
+    @Override
+    public ExecutionStats stats() {
+        return new ExecutionStats("bounded", pool.getActiveCount(), pool.getQueue().size(), rejected.sum());
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+}
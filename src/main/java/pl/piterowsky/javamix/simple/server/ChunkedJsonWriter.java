@@ -0,0 +1,220 @@
+package pl.piterowsky.javamix.simple.server;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+
+/**
+ * Streams a JSON array with chunked transfer encoding, only the element being written is held in memory
+ */
+final class ChunkedJsonWriter {
+
+    static final int PUBLISHER_BATCH = 32;
+
+    private final OutputStream out;
+    private long elements;
+
+    private ChunkedJsonWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    static boolean isStreaming(Object responseObject) {
+        return responseObject instanceof Stream
+                || responseObject instanceof Iterator
+                || responseObject instanceof Flow.Publisher;
+    }
+
+    static void write(HttpExchange httpExchange, Object source) throws IOException {
+        write(httpExchange, source, null);
+    }
+
+    /**
+     * Compresses the stream when an encoding is given, the size is not known up front so there is no threshold.
+     * When the source fails partway through the exception is rethrown without ending the body, the terminating chunk
+     * would make a truncated array look complete. The caller must then drop the connection instead of closing the
+     * exchange, HttpServer does so for exceptions thrown by handlers.
+     */
+    static void write(HttpExchange httpExchange, Object source, ResponseCompression.Encoding encoding) throws IOException {
+        httpExchange.getResponseHeaders().add("Content-type", "application/json");
+        httpExchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+        if (encoding != null) {
+            httpExchange.getResponseHeaders().add("Content-Encoding", encoding.token());
+        }
+        // Zero length switches HttpServer to chunked encoding, its chunk buffer bounds what is held per request
+        httpExchange.sendResponseHeaders(200, 0);
+        var body = new AbortableStream(httpExchange.getResponseBody());
+        OutputStream outputStream = encoding == null ? body : ResponseCompression.compressing(body, encoding);
+        try {
+            var writer = new ChunkedJsonWriter(outputStream);
+            outputStream.write('[');
+            if (source instanceof Stream) {
+                try (Stream<?> stream = (Stream<?>) source) {
+                    writer.writeAll(stream.iterator());
+                }
+            } else if (source instanceof Iterator) {
+                writer.writeAll((Iterator<?>) source);
+            } else {
+                writer.writeAll((Flow.Publisher<?>) source);
+            }
+            outputStream.write(']');
+        } catch (IOException | RuntimeException e) {
+            body.abort();
+            // Only returns a pooled Deflater, nothing reaches the exchange any more
+            closeQuietly(outputStream, e);
+            throw e;
+        }
+        outputStream.close();
+    }
+
+    private static void closeQuietly(OutputStream outputStream, Exception failure) {
+        try {
+            outputStream.close();
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private void writeAll(Iterator<?> iterator) throws IOException {
+        while (iterator.hasNext()) {
+            writeElement(iterator.next());
+        }
+    }
+
+    private void writeAll(Flow.Publisher<?> publisher) throws IOException {
+        var subscriber = new DrainingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.drainTo(this);
+    }
+
+    private void writeElement(Object element) throws IOException {
+        if (elements++ > 0) {
+            out.write(',');
+        }
+        try (var json = JsonSerializer.serialize(element)) {
+            json.writeTo(out);
+        }
+        if (elements == 1) {
+            // Push the first element out right away, later ones leave whenever a chunk fills up
+            out.flush();
+        }
+    }
+
+    /**
+     * Response body which swallows everything once aborted, closing it then leaves the exchange's stream open
+     */
+    private static final class AbortableStream extends OutputStream {
+
+        private final OutputStream out;
+        private boolean aborted;
+
+        AbortableStream(OutputStream out) {
+            this.out = out;
+        }
+
+        void abort() {
+            aborted = true;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!aborted) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!aborted) {
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!aborted) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!aborted) {
+                out.close();
+            }
+        }
+
+    }
+
+    /**
+     * Hands published elements over to the request thread, demand never exceeds the queue capacity
+     */
+    private static final class DrainingSubscriber implements Flow.Subscriber<Object> {
+
+        private static final Object COMPLETE = new Object();
+
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(PUBLISHER_BATCH + 1);
+        private volatile Flow.Subscription subscription;
+        private volatile Throwable failure;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(PUBLISHER_BATCH);
+        }
+
+        @Override
+        public void onNext(Object item) {
+            queue.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failure = throwable;
+            queue.add(COMPLETE);
+        }
+
+        @Override
+        public void onComplete() {
+            queue.add(COMPLETE);
+        }
+
+        void drainTo(ChunkedJsonWriter writer) throws IOException {
+            int consumed = 0;
+            try {
+                for (Object element = queue.take(); element != COMPLETE; element = queue.take()) {
+                    writer.writeElement(element);
+                    if (++consumed == PUBLISHER_BATCH / 2) {
+                        subscription.request(consumed);
+                        consumed = 0;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new InterruptedIOException("Interrupted while waiting for published elements");
+            } catch (IOException | RuntimeException e) {
+                cancel();
+                throw e;
+            }
+            if (failure != null) {
+                throw new IOException("Publisher failed after " + writer.elements + " elements", failure);
+            }
+        }
+
+        private void cancel() {
+            var current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+    }
+
+}
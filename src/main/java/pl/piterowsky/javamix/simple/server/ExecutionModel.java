@@ -0,0 +1,67 @@
+package pl.piterowsky.javamix.simple.server;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Decides on which threads {@link SimpleServer} handlers run.
+ * A rejected request gets its connection closed by the JDK http server, every model counts those.
+ */
+public interface ExecutionModel extends Executor {
+
+    ExecutionStats stats();
+
+    void shutdown();
+
+    /**
+     * Fixed number of platform threads with a bounded queue, requests above the queue capacity are rejected
+     */
+    static ExecutionModel boundedPool(int threads, int queueCapacity) {
+        return new BoundedPoolExecution(threads, queueCapacity);
+    }
+
+    /**
+     * Work stealing fork join pool, rejects once more than {@code maxQueued} requests are waiting
+     */
+    static ExecutionModel workStealing(int parallelism, int maxQueued) {
+        return new WorkStealingExecution(parallelism, maxQueued);
+    }
+
+    /**
+     * Thread per request on virtual threads, requires JDK 21+.
+     * At most {@code maxConcurrent} requests run at once, the rest are rejected.
+     */
+    static ExecutionModel virtualThreads(int maxConcurrent) {
+        return new VirtualThreadExecution(maxConcurrent);
+    }
+
+    /**
+     * Virtual threads when the runtime has them, a bounded pool sized for blocking handlers otherwise
+     */
+    static ExecutionModel defaultModel() {
+        if (VirtualThreadExecution.isSupported()) {
+            return virtualThreads(10_000);
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        return boundedPool(cores * 8, 1024);
+    }
+
+    /**
+     * Resolves one of {@code bounded}, {@code work-stealing}, {@code virtual} or {@code default}
+     */
+    static ExecutionModel named(String name) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        switch (name) {
+            case "bounded":
+                return boundedPool(cores * 8, 1024);
+            case "work-stealing":
+                return workStealing(cores, 1024);
+            case "virtual":
+                return virtualThreads(10_000);
+            case "default":
+                return defaultModel();
+            default:
+                throw new IllegalArgumentException("Unknown execution model " + name);
+        }
+    }
+
+}
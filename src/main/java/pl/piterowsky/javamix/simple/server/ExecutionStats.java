@@ -0,0 +1,13 @@
+package pl.piterowsky.javamix.simple.server;
+
+import lombok.Value;
+
+@Value
+public class ExecutionStats {
+
+    String model;
+    int active;
+    long queued;
+    long rejected;
+
+}
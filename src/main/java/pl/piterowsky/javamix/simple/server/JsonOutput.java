@@ -0,0 +1,194 @@
+package pl.piterowsky.javamix.simple.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable UTF-8 byte sink meant to be reused between responses, strings are escaped while being encoded.
+ * Outputs of {@link JsonSerializer#serialize} go back to its pool once closed and must not be used after that.
+ */
+public final class JsonOutput implements AutoCloseable {
+
+    private static final int INITIAL_SIZE = 1024;
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private int size;
+    private boolean borrowed;
+
+    public int size() {
+        return size;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Compresses straight from the buffer, without copying the output first
+     */
+    byte[] compress(ResponseCompression.Encoding encoding) {
+        return ResponseCompression.compress(bytes, 0, size, encoding);
+    }
+
+    /**
+     * Returns a pooled output, closing it more than once or closing one created directly does nothing
+     */
+    @Override
+    public void close() {
+        if (borrowed) {
+            borrowed = false;
+            JsonSerializer.release(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, size, StandardCharsets.UTF_8);
+    }
+
+    void borrowed() {
+        borrowed = true;
+        reset();
+    }
+
+    /**
+     * Empties the sink, a buffer inflated by one huge response is not kept around
+     */
+    private void reset() {
+        size = 0;
+        if (bytes.length > MAX_RETAINED_SIZE) {
+            bytes = new byte[INITIAL_SIZE];
+        }
+    }
+
+    void writeByte(int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+    }
+
+    void writeBytes(byte[] b) {
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, bytes, size, b.length);
+        size += b.length;
+    }
+
+    /**
+     * Writes characters known to be ASCII, like the output of Double.toString, without escaping
+     */
+    void writeAscii(String s) {
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            bytes[size++] = (byte) s.charAt(i);
+        }
+    }
+
+    void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            bytes[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+    }
+
+    /**
+     * Writes a quoted JSON string, escaping quotes, backslashes and control characters
+     */
+    void writeString(CharSequence s) {
+        int length = s.length();
+        ensureCapacity(length + 2);
+        bytes[size++] = '"';
+        for (int i = 0; i < length; i++) {
+            // Worst case a char takes 6 bytes (\\u0000), one comparison per char keeps the writes below unchecked
+            if (size + 7 > bytes.length) {
+                ensureCapacity(Math.max(7, length - i + 1));
+            }
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                bytes[size++] = (byte) c;
+            } else if (c < 0x80) {
+                writeEscaped(c);
+            } else if (c < 0x800) {
+                bytes[size++] = (byte) (0xC0 | (c >> 6));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Lone surrogate cannot be encoded in UTF-8, same replacement as String.getBytes
+                bytes[size++] = '?';
+            } else {
+                bytes[size++] = (byte) (0xE0 | (c >> 12));
+                bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        ensureCapacity(1);
+        bytes[size++] = '"';
+    }
+
+    private void writeEscaped(char c) {
+        bytes[size++] = '\\';
+        switch (c) {
+            case '"':
+                bytes[size++] = '"';
+                break;
+            case '\\':
+                bytes[size++] = '\\';
+                break;
+            case '\n':
+                bytes[size++] = 'n';
+                break;
+            case '\r':
+                bytes[size++] = 'r';
+                break;
+            case '\t':
+                bytes[size++] = 't';
+                break;
+            case '\b':
+                bytes[size++] = 'b';
+                break;
+            case '\f':
+                bytes[size++] = 'f';
+                break;
+            default:
+                bytes[size++] = 'u';
+                bytes[size++] = '0';
+                bytes[size++] = '0';
+                bytes[size++] = HEX[c >> 4];
+                bytes[size++] = HEX[c & 0xF];
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+
+}
@@ -0,0 +1,363 @@
+package pl.piterowsky.javamix.simple.server;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JSON serializer with a writer plan built once per class, field access goes through cached method handles
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class JsonSerializer {
+
+    private static final int MAX_DEPTH = 64;
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ClassValue<ValueWriter> WRITERS = new ClassValue<>() {
+        @Override
+        protected ValueWriter computeValue(Class<?> type) {
+            return writerFor(type);
+        }
+    };
+
+    private static final BoundedPool<JsonOutput> OUTPUTS = new BoundedPool<>(BoundedPool.defaultCapacity(),
+            JsonOutput::new, out -> { });
+
+    /**
+     * Serializes into a pooled buffer, closing the output hands it back for the next response
+     */
+    public static JsonOutput serialize(Object value) {
+        var out = OUTPUTS.borrow();
+        out.borrowed();
+        try {
+            write(out, value, 0);
+        } catch (RuntimeException | Error e) {
+            out.close();
+            throw e;
+        }
+        return out;
+    }
+
+    public static String toJson(Object value) {
+        try (var out = serialize(value)) {
+            return out.toString();
+        }
+    }
+
+    static void release(JsonOutput out) {
+        OUTPUTS.release(out);
+    }
+
+    private static void write(JsonOutput out, Object value, int depth) {
+        if (value == null) {
+            out.writeBytes(NULL);
+            return;
+        }
+        if (depth > MAX_DEPTH) {
+            throw new IllegalStateException("Object graph deeper than " + MAX_DEPTH + ", possible cycle at "
+                    + value.getClass().getName());
+        }
+        WRITERS.get(value.getClass()).write(out, value, depth);
+    }
+
+    @FunctionalInterface
+    private interface ValueWriter {
+
+        void write(JsonOutput out, Object value, int depth);
+
+    }
+
+    private static ValueWriter writerFor(Class<?> type) {
+        if (CharSequence.class.isAssignableFrom(type)) {
+            return (out, value, depth) -> out.writeString((CharSequence) value);
+        }
+        if (type == Boolean.class) {
+            return (out, value, depth) -> out.writeBytes((Boolean) value ? TRUE : FALSE);
+        }
+        if (type == Character.class) {
+            return (out, value, depth) -> out.writeString(String.valueOf((char) (Character) value));
+        }
+        if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class
+                || type == AtomicInteger.class || type == AtomicLong.class) {
+            return (out, value, depth) -> out.writeLong(((Number) value).longValue());
+        }
+        if (type == Double.class) {
+            return (out, value, depth) -> writeDouble(out, (Double) value);
+        }
+        if (type == Float.class) {
+            return (out, value, depth) -> writeFloat(out, (Float) value);
+        }
+        if (type == BigDecimal.class || type == BigInteger.class) {
+            return (out, value, depth) -> out.writeAscii(value.toString());
+        }
+        if (Number.class.isAssignableFrom(type)) {
+            return (out, value, depth) -> writeDouble(out, ((Number) value).doubleValue());
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            return (out, value, depth) -> out.writeString(((Enum<?>) value).name());
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return JsonSerializer::writeMap;
+        }
+        if (Iterable.class.isAssignableFrom(type)) {
+            return JsonSerializer::writeIterable;
+        }
+        if (type == Optional.class) {
+            return (out, value, depth) -> write(out, ((Optional<?>) value).orElse(null), depth + 1);
+        }
+        if (type.isArray()) {
+            return arrayWriterFor(type.getComponentType());
+        }
+        if (type.getName().startsWith("java.") || type.getName().startsWith("javax.")) {
+            // JDK value types like dates, UUIDs or paths are not introspected, their string form is used
+            return (out, value, depth) -> out.writeString(value.toString());
+        }
+        return beanWriterFor(type);
+    }
+
+    private static void writeDouble(JsonOutput out, double value) {
+        if (Double.isFinite(value)) {
+            out.writeAscii(Double.toString(value));
+        } else {
+            // NaN and infinities have no JSON representation
+            out.writeBytes(NULL);
+        }
+    }
+
+    /**
+     * Widening to double would print the binary error of the float, 0.1f as 0.10000000149011612
+     */
+    private static void writeFloat(JsonOutput out, float value) {
+        if (Float.isFinite(value)) {
+            out.writeAscii(Float.toString(value));
+        } else {
+            out.writeBytes(NULL);
+        }
+    }
+
+    private static void writeMap(JsonOutput out, Object value, int depth) {
+        out.writeByte('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+            if (!first) {
+                out.writeByte(',');
+            }
+            first = false;
+            out.writeString(String.valueOf(entry.getKey()));
+            out.writeByte(':');
+            write(out, entry.getValue(), depth + 1);
+        }
+        out.writeByte('}');
+    }
+
+    private static void writeIterable(JsonOutput out, Object value, int depth) {
+        out.writeByte('[');
+        boolean first = true;
+        for (Object element : (Iterable<?>) value) {
+            if (!first) {
+                out.writeByte(',');
+            }
+            first = false;
+            write(out, element, depth + 1);
+        }
+        out.writeByte(']');
+    }
+
+    private static ValueWriter arrayWriterFor(Class<?> componentType) {
+        if (componentType == char.class) {
+            return (out, value, depth) -> out.writeString(CharBuffer.wrap((char[]) value));
+        }
+        if (componentType == int.class) {
+            return (out, value, depth) -> {
+                int[] array = (int[]) value;
+                out.writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    out.writeLong(array[i]);
+                }
+                out.writeByte(']');
+            };
+        }
+        if (componentType == long.class) {
+            return (out, value, depth) -> {
+                long[] array = (long[]) value;
+                out.writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    out.writeLong(array[i]);
+                }
+                out.writeByte(']');
+            };
+        }
+        if (componentType == double.class) {
+            return (out, value, depth) -> {
+                double[] array = (double[]) value;
+                out.writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    writeDouble(out, array[i]);
+                }
+                out.writeByte(']');
+            };
+        }
+        if (componentType.isPrimitive()) {
+            // Remaining primitive arrays are rare enough to go through boxing
+            return (out, value, depth) -> {
+                int length = Array.getLength(value);
+                out.writeByte('[');
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    write(out, Array.get(value, i), depth + 1);
+                }
+                out.writeByte(']');
+            };
+        }
+        return (out, value, depth) -> {
+            Object[] array = (Object[]) value;
+            out.writeByte('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.writeByte(',');
+                }
+                write(out, array[i], depth + 1);
+            }
+            out.writeByte(']');
+        };
+    }
+
+    private static ValueWriter beanWriterFor(Class<?> type) {
+        List<FieldWriter> fields = new ArrayList<>();
+        collectFields(type, fields);
+        var plan = fields.toArray(new FieldWriter[0]);
+        return (out, value, depth) -> {
+            out.writeByte('{');
+            for (int i = 0; i < plan.length; i++) {
+                if (i > 0) {
+                    out.writeByte(',');
+                }
+                plan[i].write(out, value, depth);
+            }
+            out.writeByte('}');
+        };
+    }
+
+    private static void collectFields(Class<?> type, List<FieldWriter> fields) {
+        if (type == null || type == Object.class) {
+            return;
+        }
+        // Superclass fields first, the same order a reader of the class hierarchy would expect
+        collectFields(type.getSuperclass(), fields);
+        MethodHandles.Lookup lookup = lookupFor(type);
+        for (Field field : type.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                continue;
+            }
+            fields.add(new FieldWriter(field, getterFor(lookup, field)));
+        }
+    }
+
+    private static MethodHandles.Lookup lookupFor(Class<?> type) {
+        try {
+            return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            return MethodHandles.lookup();
+        }
+    }
+
+    private static MethodHandle getterFor(MethodHandles.Lookup lookup, Field field) {
+        try {
+            return lookup.unreflectGetter(field);
+        } catch (IllegalAccessException e) {
+            try {
+                field.setAccessible(true);
+                return MethodHandles.lookup().unreflectGetter(field);
+            } catch (RuntimeException | IllegalAccessException fallback) {
+                throw new IllegalStateException("Field " + field + " is not accessible for serialization", fallback);
+            }
+        }
+    }
+
+    /**
+     * One field of a bean plan, primitive fields are read through handles of their own type so nothing is boxed
+     */
+    private static final class FieldWriter {
+
+        private static final MethodType OBJECT_GETTER = MethodType.methodType(Object.class, Object.class);
+
+        private final byte[] name;
+        private final Class<?> type;
+        private final MethodHandle getter;
+        private final String fieldName;
+
+        FieldWriter(Field field, MethodHandle getter) {
+            var json = new JsonOutput();
+            json.writeString(field.getName());
+            json.writeByte(':');
+            this.name = json.toByteArray();
+            this.fieldName = field.getName();
+            this.type = field.getType();
+            this.getter = type.isPrimitive()
+                    ? getter.asType(MethodType.methodType(widen(type), Object.class))
+                    : getter.asType(OBJECT_GETTER);
+        }
+
+        private static Class<?> widen(Class<?> type) {
+            if (type == int.class || type == short.class || type == byte.class) {
+                return long.class;
+            }
+            return type;
+        }
+
+        void write(JsonOutput out, Object bean, int depth) {
+            out.writeBytes(name);
+            try {
+                if (type == int.class || type == long.class || type == short.class || type == byte.class) {
+                    out.writeLong((long) getter.invokeExact(bean));
+                } else if (type == double.class) {
+                    writeDouble(out, (double) getter.invokeExact(bean));
+                } else if (type == float.class) {
+                    writeFloat(out, (float) getter.invokeExact(bean));
+                } else if (type == boolean.class) {
+                    out.writeBytes((boolean) getter.invokeExact(bean) ? TRUE : FALSE);
+                } else if (type == char.class) {
+                    out.writeString(String.valueOf((char) getter.invokeExact(bean)));
+                } else {
+                    JsonSerializer.write(out, (Object) getter.invokeExact(bean), depth + 1);
+                }
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Could not read field " + fieldName, e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,255 @@
+package pl.piterowsky.javamix.simple.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Read-only view over urlencoded parameters. Parsing only records where each pair starts and ends, keys and values
+ * are percent-decoded when looked up. Repeated keys resolve to the first value, {@link #getAll} returns every one.
+ */
+public final class RequestParams extends AbstractMap<String, String> {
+
+    private static final int STRIDE = 5;
+    private static final int KEY_ENCODED = 1;
+    private static final int VALUE_ENCODED = 2;
+    private static final int[] NO_PAIRS = new int[0];
+
+    // Exactly one of the sources is set, HttpServer hands out raw queries as one char per request byte
+    private String text;
+    private byte[] bytes;
+    private int[] pairs = NO_PAIRS;
+    private int count;
+    private String[] decodedValues;
+    private Map<String, String> overrides = Collections.emptyMap();
+    private Map<String, String> materialized;
+
+    public static RequestParams of(String rawQuery) {
+        var params = new RequestParams();
+        params.parse(rawQuery);
+        return params;
+    }
+
+    public static RequestParams of(byte[] body, int length) {
+        var params = new RequestParams();
+        params.parse(body, length);
+        return params;
+    }
+
+    /**
+     * Re-parses in place, keeping the pair index allocated for the previous source
+     */
+    void parse(String rawQuery) {
+        reset();
+        this.text = rawQuery == null ? "" : rawQuery;
+        index(this.text.length());
+    }
+
+    void parse(byte[] body, int length) {
+        reset();
+        this.bytes = body;
+        index(length);
+    }
+
+    /**
+     * Values captured from the path take precedence over parsed ones
+     */
+    void setOverrides(Map<String, String> overrides) {
+        this.overrides = overrides;
+        this.materialized = null;
+    }
+
+    private void reset() {
+        text = null;
+        bytes = null;
+        count = 0;
+        decodedValues = null;
+        overrides = Collections.emptyMap();
+        materialized = null;
+    }
+
+    private int at(int i) {
+        return bytes != null ? bytes[i] & 0xFF : text.charAt(i) & 0xFF;
+    }
+
+    private void index(int length) {
+        int pairStart = 0;
+        int separator = -1;
+        int flags = 0;
+        for (int i = 0; i <= length; i++) {
+            int c = i < length ? at(i) : '&';
+            if (c == '&') {
+                if (i > pairStart) {
+                    int keyEnd = separator < 0 ? i : separator;
+                    int valueStart = separator < 0 ? i : separator + 1;
+                    addPair(pairStart, keyEnd, valueStart, i, flags);
+                }
+                pairStart = i + 1;
+                separator = -1;
+                flags = 0;
+            } else if (c == '=' && separator < 0) {
+                separator = i;
+            } else if (c == '%' || c == '+' || c >= 0x80) {
+                flags |= separator < 0 ? KEY_ENCODED : VALUE_ENCODED;
+            }
+        }
+    }
+
+    private void addPair(int keyStart, int keyEnd, int valueStart, int valueEnd, int flags) {
+        int offset = count * STRIDE;
+        if (offset + STRIDE > pairs.length) {
+            pairs = Arrays.copyOf(pairs, Math.max(4 * STRIDE, pairs.length * 2));
+        }
+        pairs[offset] = keyStart;
+        pairs[offset + 1] = keyEnd;
+        pairs[offset + 2] = valueStart;
+        pairs[offset + 3] = valueEnd;
+        pairs[offset + 4] = flags;
+        count++;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        var override = overrides.get(key);
+        if (override != null) {
+            return override;
+        }
+        int pair = indexOf((String) key, 0);
+        return pair < 0 ? null : value(pair);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && (overrides.containsKey(key) || indexOf((String) key, 0) >= 0);
+    }
+
+    public List<String> getAll(String key) {
+        List<String> values = new ArrayList<>(1);
+        for (int pair = indexOf(key, 0); pair >= 0; pair = indexOf(key, pair + 1)) {
+            values.add(value(pair));
+        }
+        return values;
+    }
+
+    /**
+     * Visits every decoded pair including repeated keys, overridden keys are visited once with their override
+     */
+    void forEachPair(BiConsumer<String, String> action) {
+        for (int pair = 0; pair < count; pair++) {
+            var key = key(pair);
+            if (!overrides.containsKey(key)) {
+                action.accept(key, value(pair));
+            }
+        }
+        overrides.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return materialize().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0 && overrides.isEmpty();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return materialize().entrySet();
+    }
+
+    private Map<String, String> materialize() {
+        if (materialized == null) {
+            Map<String, String> map = new LinkedHashMap<>();
+            for (int pair = 0; pair < count; pair++) {
+                map.putIfAbsent(key(pair), value(pair));
+            }
+            map.putAll(overrides);
+            materialized = Collections.unmodifiableMap(map);
+        }
+        return materialized;
+    }
+
+    private int indexOf(String key, int fromPair) {
+        for (int pair = fromPair; pair < count; pair++) {
+            if (keyEquals(pair, key)) {
+                return pair;
+            }
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(int pair, String key) {
+        int offset = pair * STRIDE;
+        if ((pairs[offset + 4] & KEY_ENCODED) != 0) {
+            return key.equals(key(pair));
+        }
+        int start = pairs[offset];
+        int length = pairs[offset + 1] - start;
+        if (length != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (at(start + i) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String key(int pair) {
+        int offset = pair * STRIDE;
+        return decode(pairs[offset], pairs[offset + 1], (pairs[offset + 4] & KEY_ENCODED) != 0);
+    }
+
+    private String value(int pair) {
+        if (decodedValues == null) {
+            decodedValues = new String[count];
+        }
+        var value = decodedValues[pair];
+        if (value == null) {
+            int offset = pair * STRIDE;
+            value = decode(pairs[offset + 2], pairs[offset + 3], (pairs[offset + 4] & VALUE_ENCODED) != 0);
+            decodedValues[pair] = value;
+        }
+        return value;
+    }
+
+    private String decode(int start, int end, boolean encoded) {
+        if (!encoded) {
+            return bytes != null
+                    ? new String(bytes, start, end - start, StandardCharsets.ISO_8859_1)
+                    : text.substring(start, end);
+        }
+        var decoded = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            int c = at(i);
+            if (c == '+') {
+                c = ' ';
+            } else if (c == '%' && i + 2 < end) {
+                int high = Character.digit(at(i + 1), 16);
+                int low = Character.digit(at(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    c = (high << 4) | low;
+                    i += 2;
+                }
+                // A malformed escape is kept as a literal '%'
+            }
+            decoded[length++] = (byte) c;
+        }
+        return new String(decoded, 0, length, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,335 @@
+package pl.piterowsky.javamix.simple.server;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Opt-in cache of encoded GET responses keyed on route and parameters. Entries expire after the TTL, ones not used
+ * lately are dropped when the entry or byte budget is exceeded, concurrent misses for one key run the handler once.
+ * Compressed variants are kept next to the body and count against the byte budget.
+ * <p>
+ * Eviction follows the CLOCK approximation of LRU: entries queue up in insertion order, a hit only sets a flag and
+ * a flagged entry at the head of the queue gets another round instead of being dropped. Hits stay lock free and
+ * each eviction costs constant amortized time however full the cache is.
+ */
+public class ResponseCache {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    private final Queue<Entry> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public ResponseCache(int maxEntries, long maxBytes, Duration ttl) {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Cache budget must be positive, got " + maxEntries + " entries and "
+                    + maxBytes + " bytes");
+        }
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("TTL must be positive, got " + ttl);
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), coalesced.sum(), evictions.sum(), expirations.sum(),
+                entries.size(), bytes.get());
+    }
+
+    public void invalidateAll() {
+        entries.keySet().forEach(this::invalidate);
+    }
+
+    /**
+     * Builds a key independent of parameter order, repeated keys keep their relative order
+     */
+    static String key(String pattern, RequestParams params) {
+        List<String[]> pairs = new ArrayList<>();
+        params.forEachPair((name, value) -> pairs.add(new String[]{name, value}));
+        pairs.sort(Comparator.comparing(pair -> pair[0]));
+        var key = new StringBuilder(pattern.length() + 16 * pairs.size()).append(pattern);
+        for (String[] pair : pairs) {
+            // Length prefixes keep keys unambiguous whatever characters the decoded values contain
+            key.append('\n').append(pair[0].length()).append(':').append(pair[0])
+                    .append(pair[1].length()).append(':').append(pair[1]);
+        }
+        return key.toString();
+    }
+
+    Entry get(String key, Supplier<byte[]> loader) {
+        var entry = entries.get(key);
+        if (entry != null) {
+            long now = System.nanoTime();
+            if (now - entry.expiresAt < 0) {
+                // Read before writing, so hits on a popular entry do not keep invalidating its cache line
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                hits.increment();
+                return entry;
+            }
+            if (entries.remove(key, entry)) {
+                bytes.addAndGet(-entry.detach());
+                expirations.increment();
+            }
+        }
+        var pending = new CompletableFuture<Entry>();
+        var inFlight = loading.putIfAbsent(key, pending);
+        if (inFlight != null) {
+            coalesced.increment();
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            // Another thread may have stored the entry and left loading since the lookup above
+            var stored = entries.get(key);
+            if (stored != null && System.nanoTime() - stored.expiresAt < 0) {
+                hits.increment();
+                pending.complete(stored);
+                return stored;
+            }
+            misses.increment();
+            var loaded = new Entry(key, loader.get(), System.nanoTime() + ttlNanos);
+            store(key, loaded);
+            pending.complete(loaded);
+            return loaded;
+        } catch (RuntimeException | Error e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, pending);
+        }
+    }
+
+    /**
+     * Body in the given encoding, compressed on first use and kept with the entry.
+     * Null when the body is below {@code minBytes} or compressing does not make it smaller.
+     */
+    byte[] encoded(Entry entry, ResponseCompression.Encoding encoding, int minBytes) {
+        if (entry.body.length < minBytes) {
+            return null;
+        }
+        var encoded = entry.encoded(encoding);
+        if (encoded == null) {
+            encoded = ResponseCompression.compress(entry.body, 0, entry.body.length, encoding);
+            if (encoded.length >= entry.body.length) {
+                encoded = Entry.NOT_SMALLER;
+            }
+            long added = entry.attach(encoding, encoded);
+            if (added > 0) {
+                bytes.addAndGet(added);
+                evictOverBudget();
+            }
+        }
+        return encoded == Entry.NOT_SMALLER ? null : encoded;
+    }
+
+    private void store(String key, Entry entry) {
+        if (entry.body.length > maxBytes) {
+            // Served once without being cached, compressed variants must not be counted either
+            entry.detach();
+            return;
+        }
+        var previous = entries.put(key, entry);
+        bytes.addAndGet(entry.body.length - (previous != null ? previous.detach() : 0));
+        enqueue(entry);
+        if (queued.get() > 2L * maxEntries) {
+            dropStale();
+        }
+        evictOverBudget();
+    }
+
+    private void evictOverBudget() {
+        while (entries.size() > maxEntries || bytes.get() > maxBytes) {
+            var candidate = clock.poll();
+            if (candidate == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            if (entries.get(candidate.key) != candidate) {
+                // Expired, invalidated or replaced already, the queue only forgets it now
+                continue;
+            }
+            if (candidate.referenced) {
+                candidate.referenced = false;
+                enqueue(candidate);
+            } else if (entries.remove(candidate.key, candidate)) {
+                bytes.addAndGet(-candidate.detach());
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Entries which left the cache other than by eviction stay queued, one pass drops them once they outnumber the
+     * live ones, which keeps the queue within twice the entry budget at constant amortized cost per store
+     */
+    private void dropStale() {
+        for (int i = queued.get(); i > 0; i--) {
+            var candidate = clock.poll();
+            if (candidate == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            if (entries.get(candidate.key) == candidate) {
+                enqueue(candidate);
+            }
+        }
+    }
+
+    private void enqueue(Entry entry) {
+        clock.add(entry);
+        queued.incrementAndGet();
+    }
+
+    private void invalidate(String key) {
+        var removed = entries.remove(key);
+        if (removed != null) {
+            bytes.addAndGet(-removed.detach());
+        }
+    }
+
+    /**
+     * True when one of the tags in an If-None-Match header matches, compared weakly as RFC 7232 asks for
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            var tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static final class Entry {
+
+        private static final byte[] NOT_SMALLER = new byte[0];
+
+        private final String key;
+        private final byte[] body;
+        private final String etag;
+        private final long expiresAt;
+        private final byte[][] encoded = new byte[ResponseCompression.Encoding.values().length][];
+        private volatile boolean referenced;
+        private long size;
+        private boolean detached;
+
+        private Entry(String key, byte[] body, long expiresAt) {
+            this.key = key;
+            this.body = body;
+            this.etag = etagOf(body);
+            this.expiresAt = expiresAt;
+            this.size = body.length;
+        }
+
+        byte[] body() {
+            return body;
+        }
+
+        String etag() {
+            return etag;
+        }
+
+        /**
+         * Each representation needs its own strong validator, the encoding is appended to the tag of the body
+         */
+        String etag(ResponseCompression.Encoding encoding) {
+            return etag.substring(0, etag.length() - 1) + '-' + encoding.token() + '"';
+        }
+
+        private synchronized byte[] encoded(ResponseCompression.Encoding encoding) {
+            return encoded[encoding.ordinal()];
+        }
+
+        /**
+         * Returns the bytes to add to the cache size, nothing once the entry left the cache or another thread won
+         */
+        private synchronized long attach(ResponseCompression.Encoding encoding, byte[] bytes) {
+            if (encoded[encoding.ordinal()] != null) {
+                return 0;
+            }
+            encoded[encoding.ordinal()] = bytes;
+            if (detached) {
+                return 0;
+            }
+            size += bytes.length;
+            return bytes.length;
+        }
+
+        /**
+         * Marks the entry as removed and returns the bytes it accounted for
+         */
+        private synchronized long detach() {
+            detached = true;
+            return size;
+        }
+
+        // Strong validator, identical bytes give the same tag across restarts and instances
+        private static String etagOf(byte[] body) {
+            try {
+                var digest = MessageDigest.getInstance("SHA-256").digest(body);
+                var encoded = Base64.getUrlEncoder().withoutPadding().encode(Arrays.copyOf(digest, 16));
+                return '"' + new String(encoded, StandardCharsets.US_ASCII) + '"';
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is required on every JVM", e);
+            }
+        }
+
+    }
+
+    @Value
+    public static class Stats {
+
+        long hits;
+        long misses;
+        long coalesced;
+        long evictions;
+        long expirations;
+        int entries;
+        long bytes;
+
+    }
+
+}
@@ -0,0 +1,220 @@
+package pl.piterowsky.javamix.simple.server;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Accept-Encoding negotiation and gzip or deflate encoding of response bodies. Deflaters are borrowed from a bounded
+ * pool per format and reset between responses, GZIPOutputStream would allocate native zlib state for each of them.
+ * Deflaters the pool has no room for are ended right away instead of holding native memory until finalization.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class ResponseCompression {
+
+    static final int DEFAULT_MIN_BYTES = 1024;
+    private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private static final BoundedPool<Deflater> ZLIB = new BoundedPool<>(BoundedPool.defaultCapacity(),
+            Deflater::new, Deflater::end);
+    private static final BoundedPool<Deflater> RAW = new BoundedPool<>(BoundedPool.defaultCapacity(),
+            () -> new Deflater(Deflater.DEFAULT_COMPRESSION, true), Deflater::end);
+
+    enum Encoding {
+        GZIP("gzip"),
+        DEFLATE("deflate");
+
+        private final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+
+        String token() {
+            return token;
+        }
+    }
+
+    /**
+     * Picks the encoding with the highest quality value, gzip wins ties. Null when neither is acceptable.
+     */
+    static Encoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String candidate : acceptEncoding.split(",")) {
+            int semicolon = candidate.indexOf(';');
+            var coding = (semicolon < 0 ? candidate : candidate.substring(0, semicolon)).trim();
+            double quality = semicolon < 0 ? 1 : quality(candidate.substring(semicolon + 1));
+            if (coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip")) {
+                gzip = Math.max(gzip, quality);
+            } else if (coding.equalsIgnoreCase("deflate")) {
+                deflate = Math.max(deflate, quality);
+            } else if (coding.equals("*")) {
+                any = quality;
+            }
+        }
+        gzip = gzip < 0 ? any : gzip;
+        deflate = deflate < 0 ? any : deflate;
+        if (gzip > 0 && gzip >= deflate) {
+            return Encoding.GZIP;
+        }
+        return deflate > 0 ? Encoding.DEFLATE : null;
+    }
+
+    private static double quality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            var trimmed = parameter.trim();
+            if (trimmed.length() > 2 && (trimmed.charAt(0) == 'q' || trimmed.charAt(0) == 'Q') && trimmed.charAt(1) == '=') {
+                try {
+                    return Double.parseDouble(trimmed.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    static byte[] compress(byte[] source, int offset, int length, Encoding encoding) {
+        var pool = pool(encoding);
+        var deflater = pool.borrow();
+        try {
+            return compress(source, offset, length, encoding, deflater);
+        } finally {
+            pool.release(deflater);
+        }
+    }
+
+    private static byte[] compress(byte[] source, int offset, int length, Encoding encoding, Deflater deflater) {
+        boolean gzip = encoding == Encoding.GZIP;
+        deflater.reset();
+        deflater.setInput(source, offset, length);
+        deflater.finish();
+        // JSON usually shrinks to well under half, the buffer grows for anything less compressible
+        var out = new byte[length / 2 + 64];
+        int size = 0;
+        if (gzip) {
+            System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+            size = GZIP_HEADER.length;
+        }
+        while (!deflater.finished()) {
+            if (size == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            size += deflater.deflate(out, size, out.length - size);
+        }
+        if (!gzip) {
+            return Arrays.copyOf(out, size);
+        }
+        var crc = new CRC32();
+        crc.update(source, offset, length);
+        out = Arrays.copyOf(out, size + GZIP_TRAILER_LENGTH);
+        writeIntLE(out, size, (int) crc.getValue());
+        writeIntLE(out, size + 4, length);
+        return out;
+    }
+
+    /**
+     * Compresses everything written until closed, flushing pushes out what was written so far.
+     * The stream must be closed, closing it returns its Deflater to the pool.
+     */
+    static OutputStream compressing(OutputStream out, Encoding encoding) throws IOException {
+        var pool = pool(encoding);
+        var deflater = pool.borrow();
+        deflater.reset();
+        try {
+            return encoding == Encoding.GZIP
+                    ? new GzipStream(out, pool, deflater)
+                    : new PooledDeflaterStream(out, pool, deflater);
+        } catch (IOException | RuntimeException e) {
+            pool.release(deflater);
+            throw e;
+        }
+    }
+
+    // HTTP deflate is the zlib format, gzip wraps raw deflate data in its own header and trailer
+    private static BoundedPool<Deflater> pool(Encoding encoding) {
+        return encoding == Encoding.GZIP ? RAW : ZLIB;
+    }
+
+    private static void writeIntLE(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >>> 8);
+        out[offset + 2] = (byte) (value >>> 16);
+        out[offset + 3] = (byte) (value >>> 24);
+    }
+
+    /**
+     * DeflaterOutputStream which returns its Deflater to the pool on close instead of ending it
+     */
+    private static class PooledDeflaterStream extends DeflaterOutputStream {
+
+        private final BoundedPool<Deflater> pool;
+        private boolean released;
+
+        PooledDeflaterStream(OutputStream out, BoundedPool<Deflater> pool, Deflater deflater) {
+            super(out, deflater, STREAM_BUFFER_SIZE, true);
+            this.pool = pool;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!released) {
+                    released = true;
+                    pool.release(def);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * GZIPOutputStream with a pooled Deflater
+     */
+    private static final class GzipStream extends PooledDeflaterStream {
+
+        private final CRC32 crc = new CRC32();
+        private boolean trailerWritten;
+
+        GzipStream(OutputStream out, BoundedPool<Deflater> pool, Deflater deflater) throws IOException {
+            super(out, pool, deflater);
+            out.write(GZIP_HEADER);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (trailerWritten) {
+                return;
+            }
+            super.finish();
+            var trailer = new byte[GZIP_TRAILER_LENGTH];
+            writeIntLE(trailer, 0, (int) crc.getValue());
+            writeIntLE(trailer, 4, (int) def.getBytesRead());
+            out.write(trailer);
+            trailerWritten = true;
+        }
+
+    }
+
+}
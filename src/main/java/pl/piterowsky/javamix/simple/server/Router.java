@@ -0,0 +1,327 @@
+package pl.piterowsky.javamix.simple.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Segment trie dispatching on method and path. Patterns may contain {name} captures and a trailing * or {name*}
+ * wildcard. Static segments win over captures and captures over wildcards, with backtracking when a branch has
+ * no route for the method.
+ */
+final class Router<T> {
+
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+
+    private final Node<T> root = new Node<>("");
+    private volatile int maxParams;
+
+    synchronized void add(HttpMethod method, String pattern, T handler) {
+        if (!pattern.startsWith("/")) {
+            throw new IllegalArgumentException("Route pattern must start with '/': " + pattern);
+        }
+        var node = root;
+        var paramNames = new String[0];
+        int end = trimmedEnd(pattern);
+        for (int pos = 1; pos < end; ) {
+            int segmentEnd = segmentEnd(pattern, pos, end);
+            var segment = pattern.substring(pos, segmentEnd);
+            if (isWildcard(segment)) {
+                if (segmentEnd != end) {
+                    throw new IllegalArgumentException("Wildcard must be the last segment: " + pattern);
+                }
+                var name = segment.equals("*") ? "*" : segment.substring(1, segment.length() - 2);
+                paramNames = append(paramNames, name);
+                node = node.wildcardChild();
+            } else if (segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}') {
+                paramNames = append(paramNames, segment.substring(1, segment.length() - 1));
+                node = node.paramChild();
+            } else {
+                node = node.staticChild(segment);
+            }
+            pos = segmentEnd + 1;
+        }
+        maxParams = Math.max(maxParams, paramNames.length);
+        node.setRoute(method, new Route<>(pattern, handler, paramNames));
+    }
+
+    /**
+     * Finds the route for a decoded path, the query string must already be stripped
+     */
+    Match<T> match(HttpMethod method, String path) {
+        if (method == null || path.isEmpty() || path.charAt(0) != '/') {
+            return new Match<>(null, null, null, false);
+        }
+        var search = new Search(method, path, maxParams);
+        var node = find(root, search, 1, 0);
+        if (node == null) {
+            return new Match<>(null, null, null, search.pathMatched);
+        }
+        var route = node.route(method);
+        return new Match<>(route, path, search.captures, true);
+    }
+
+    private Node<T> find(Node<T> node, Search search, int pos, int captured) {
+        var path = search.path;
+        int end = search.end;
+        if (pos >= end) {
+            if (node.hasRoutes()) {
+                search.pathMatched = true;
+                if (node.route(search.method) != null) {
+                    return node;
+                }
+            }
+            // A wildcard also matches an empty remainder, /static/* serves /static/
+            return wildcard(node, search, end, captured);
+        }
+        int segmentEnd = segmentEnd(path, pos, end);
+        var child = node.findStatic(path, pos, segmentEnd);
+        if (child != null) {
+            var found = find(child, search, segmentEnd + 1, captured);
+            if (found != null) {
+                return found;
+            }
+        }
+        var param = node.param;
+        if (param != null && segmentEnd > pos) {
+            search.capture(captured, pos, segmentEnd);
+            var found = find(param, search, segmentEnd + 1, captured + 1);
+            if (found != null) {
+                return found;
+            }
+        }
+        return wildcard(node, search, pos, captured);
+    }
+
+    private Node<T> wildcard(Node<T> node, Search search, int pos, int captured) {
+        var wildcard = node.wildcard;
+        if (wildcard == null) {
+            return null;
+        }
+        search.pathMatched = true;
+        if (wildcard.route(search.method) == null) {
+            return null;
+        }
+        search.capture(captured, Math.min(pos, search.end), search.end);
+        return wildcard;
+    }
+
+    private static boolean isWildcard(String segment) {
+        return segment.equals("*") || (segment.length() > 3 && segment.charAt(0) == '{' && segment.endsWith("*}"));
+    }
+
+    // A trailing slash is ignored, /hello/ and /hello are the same route
+    private static int trimmedEnd(String path) {
+        int end = path.length();
+        return end > 1 && path.charAt(end - 1) == '/' ? end - 1 : end;
+    }
+
+    private static int segmentEnd(String path, int pos, int end) {
+        int slash = path.indexOf('/', pos);
+        return slash < 0 || slash > end ? end : slash;
+    }
+
+    private static String[] append(String[] names, String name) {
+        var result = Arrays.copyOf(names, names.length + 1);
+        result[names.length] = name;
+        return result;
+    }
+
+    private static final class Search {
+
+        final HttpMethod method;
+        final String path;
+        final int end;
+        int[] captures;
+        boolean pathMatched;
+
+        Search(HttpMethod method, String path, int maxParams) {
+            this.method = method;
+            this.path = path;
+            this.end = trimmedEnd(path);
+            this.captures = new int[2 * maxParams];
+        }
+
+        void capture(int index, int start, int end) {
+            if (2 * index + 1 >= captures.length) {
+                // Only when a route with more captures was registered while this lookup was running
+                captures = Arrays.copyOf(captures, 2 * index + 2);
+            }
+            captures[2 * index] = start;
+            captures[2 * index + 1] = end;
+        }
+
+    }
+
+    static final class Route<T> {
+
+        final String pattern;
+        final T handler;
+        final String[] paramNames;
+
+        Route(String pattern, T handler, String[] paramNames) {
+            this.pattern = pattern;
+            this.handler = handler;
+            this.paramNames = paramNames;
+        }
+
+    }
+
+    /**
+     * Result of a lookup, captured values are only cut out of the path when asked for
+     */
+    static final class Match<T> {
+
+        private final Route<T> route;
+        private final String path;
+        private final int[] captures;
+        private final boolean pathMatched;
+
+        private Match(Route<T> route, String path, int[] captures, boolean pathMatched) {
+            this.route = route;
+            this.path = path;
+            this.captures = captures;
+            this.pathMatched = pathMatched;
+        }
+
+        boolean isFound() {
+            return route != null;
+        }
+
+        /**
+         * True when the path exists for another method, answered with 405 instead of 404
+         */
+        boolean isMethodNotAllowed() {
+            return route == null && pathMatched;
+        }
+
+        T handler() {
+            return route.handler;
+        }
+
+        String pattern() {
+            return route.pattern;
+        }
+
+        Map<String, String> pathParams() {
+            var names = route.paramNames;
+            if (names.length == 0) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> params = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                params.put(names[i], path.substring(captures[2 * i], captures[2 * i + 1]));
+            }
+            return params;
+        }
+
+    }
+
+    private static final class Node<T> {
+
+        @SuppressWarnings("unchecked")
+        private static final Node<?>[] NO_CHILDREN = new Node[0];
+
+        private final String segment;
+        // Replaced as a whole on registration so lookups never see a half updated array
+        private volatile Node<T>[] children = noChildren();
+        private volatile Node<T> param;
+        private volatile Node<T> wildcard;
+        private volatile Route<T>[] routes;
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] noChildren() {
+            return (Node<T>[]) NO_CHILDREN;
+        }
+
+        Node<T> findStatic(String path, int start, int end) {
+            var nodes = children;
+            int low = 0;
+            int high = nodes.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(nodes[mid].segment, path, start, end);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return nodes[mid];
+                }
+            }
+            return null;
+        }
+
+        Node<T> staticChild(String segment) {
+            var existing = findStatic(segment, 0, segment.length());
+            if (existing != null) {
+                return existing;
+            }
+            var node = new Node<T>(segment);
+            var nodes = children;
+            int index = 0;
+            while (index < nodes.length && nodes[index].segment.compareTo(segment) < 0) {
+                index++;
+            }
+            var updated = Arrays.copyOf(nodes, nodes.length + 1);
+            System.arraycopy(nodes, index, updated, index + 1, nodes.length - index);
+            updated[index] = node;
+            children = updated;
+            return node;
+        }
+
+        Node<T> paramChild() {
+            if (param == null) {
+                param = new Node<>("{}");
+            }
+            return param;
+        }
+
+        Node<T> wildcardChild() {
+            if (wildcard == null) {
+                wildcard = new Node<>("*");
+            }
+            return wildcard;
+        }
+
+        boolean hasRoutes() {
+            return routes != null;
+        }
+
+        Route<T> route(HttpMethod method) {
+            var current = routes;
+            return current == null ? null : current[method.ordinal()];
+        }
+
+        @SuppressWarnings("unchecked")
+        void setRoute(HttpMethod method, Route<T> route) {
+            var updated = routes == null ? (Route<T>[]) new Route[METHODS.length] : routes.clone();
+            if (updated[method.ordinal()] != null) {
+                throw new IllegalStateException("Route " + method + " " + updated[method.ordinal()].pattern
+                        + " already registered, conflicts with " + route.pattern);
+            }
+            updated[method.ordinal()] = route;
+            routes = updated;
+        }
+
+        // Same ordering as String.compareTo without cutting the segment out of the path
+        private static int compare(String segment, String path, int start, int end) {
+            int length = end - start;
+            int common = Math.min(segment.length(), length);
+            for (int i = 0; i < common; i++) {
+                int diff = segment.charAt(i) - path.charAt(start + i);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return segment.length() - length;
+        }
+
+    }
+
+}
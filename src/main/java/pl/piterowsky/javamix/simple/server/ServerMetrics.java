@@ -0,0 +1,92 @@
+package pl.piterowsky.javamix.simple.server;
+
+import lombok.Value;
+import pl.piterowsky.javamix.metrics.Histogram;
+import pl.piterowsky.javamix.metrics.HistogramSnapshot;
+import pl.piterowsky.javamix.non.blocking.io.NioMetrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Request latency histograms per route pattern and per response status. Histograms are created on the first
+ * request of their kind, later requests only look them up.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    private static final int MAX_STATUS = 600;
+
+    private final Map<String, Histogram> routes = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Histogram> statuses = new AtomicReferenceArray<>(MAX_STATUS);
+    private final Supplier<ExecutionStats> executionStats;
+
+    ServerMetrics(Supplier<ExecutionStats> executionStats) {
+        this.executionStats = executionStats;
+    }
+
+    /**
+     * Unmatched requests pass a null route and only count towards their status
+     */
+    void record(String route, int status, long nanos) {
+        if (route != null) {
+            var histogram = routes.get(route);
+            if (histogram == null) {
+                histogram = routes.computeIfAbsent(route, key -> new Histogram());
+            }
+            histogram.record(nanos);
+        }
+        if (status > 0 && status < MAX_STATUS) {
+            var histogram = statuses.get(status);
+            if (histogram == null) {
+                statuses.compareAndSet(status, null, new Histogram());
+                histogram = statuses.get(status);
+            }
+            histogram.record(nanos);
+        }
+    }
+
+    @Override
+    public Map<String, HistogramSnapshot> getRoutes() {
+        Map<String, HistogramSnapshot> snapshots = new TreeMap<>();
+        routes.forEach((route, histogram) -> snapshots.put(route, histogram.snapshot()));
+        return snapshots;
+    }
+
+    @Override
+    public Map<String, HistogramSnapshot> getStatuses() {
+        Map<String, HistogramSnapshot> snapshots = new TreeMap<>();
+        for (int status = 0; status < MAX_STATUS; status++) {
+            var histogram = statuses.get(status);
+            if (histogram != null) {
+                snapshots.put(String.valueOf(status), histogram.snapshot());
+            }
+        }
+        return snapshots;
+    }
+
+    @Override
+    public ExecutionStats getExecution() {
+        return executionStats.get();
+    }
+
+    Snapshot snapshot(NioMetrics nio) {
+        return new Snapshot(getRoutes(), getStatuses(), getExecution(), nio);
+    }
+
+    /**
+     * Everything served by the metrics endpoint, nio is null with the JDK transport
+     */
+    @Value
+    public static class Snapshot {
+
+        Map<String, HistogramSnapshot> routes;
+        Map<String, HistogramSnapshot> statuses;
+        ExecutionStats execution;
+        NioMetrics nio;
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package pl.piterowsky.javamix.simple.server;
+
+import pl.piterowsky.javamix.metrics.HistogramSnapshot;
+
+import java.util.Map;
+
+/**
+ * JMX view of the request latencies of a running {@link SimpleServer}, in nanoseconds
+ */
+public interface ServerMetricsMXBean {
+
+    Map<String, HistogramSnapshot> getRoutes();
+
+    Map<String, HistogramSnapshot> getStatuses();
+
+    ExecutionStats getExecution();
+
+}
@@ -6,94 +6,502 @@ import lombok.AccessLevel;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import pl.piterowsky.javamix.metrics.MBeans;
+import pl.piterowsky.javamix.non.blocking.io.NioHttpExchange;
+import pl.piterowsky.javamix.non.blocking.io.NonBlockingIO;
+import pl.piterowsky.javamix.non.blocking.io.NonBlockingIOOptions;
 
+import javax.management.ObjectName;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.stream.LongStream;
 
 @Log4j2
 public class SimpleServer {
 
     private static final Integer PORT = 8080;
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+    private static final int MAX_FORM_BYTES = 1024 * 1024;
+    private static final Duration DEFAULT_ASYNC_TIMEOUT = Duration.ofSeconds(30);
 
+    private final Transport transport;
     private final HttpServer server;
+    private final NonBlockingIO nonBlockingIO;
+    private final ExecutionModel executionModel;
+    private final Router<RouteHandler> router = new Router<>();
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+    private final Executor completionExecutor = this::executeOrRun;
+    private final ServerMetrics metrics = new ServerMetrics(this::executionStats);
+    private Thread acceptor;
+    private ObjectName metricsName;
+    private volatile int compressionMinBytes = ResponseCompression.DEFAULT_MIN_BYTES;
 
     public SimpleServer() throws IOException {
-        this.server = HttpServer.create(new InetSocketAddress("localhost", PORT), 0);
-        this.server.setExecutor(Executors.newFixedThreadPool(5));
+        this(ExecutionModel.defaultModel());
+    }
+
+    public SimpleServer(ExecutionModel executionModel) throws IOException {
+        this(executionModel, Transport.JDK);
+    }
+
+    /**
+     * Both transports serve the same routes, handlers run on the execution model either way
+     */
+    public SimpleServer(ExecutionModel executionModel, Transport transport) throws IOException {
+        this.transport = transport;
+        this.executionModel = executionModel;
+        if (transport == Transport.NIO) {
+            this.server = null;
+            this.nonBlockingIO = new NonBlockingIO(new NonBlockingIOOptions()
+                    .port(PORT)
+                    .http(this::dispatch, executionModel));
+        } else {
+            this.server = HttpServer.create(new InetSocketAddress("localhost", PORT), 0);
+            this.nonBlockingIO = null;
+            this.server.setExecutor(executionModel);
+            this.server.createContext("/", this::dispatch);
+        }
     }
 
     public static void main(String[] args) throws IOException {
-        var server = new SimpleServer();
-        server.get("/hello", (httpExchange, params) -> {
+        // HttpServer writes the head and the body separately, with Nagle the body waits for the client's delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        var server = new SimpleServer(ExecutionModel.named(System.getProperty("simple.server.execution", "default")),
+                Transport.valueOf(System.getProperty("simple.server.transport", "jdk").toUpperCase(Locale.ROOT)));
+        var helloCache = new ResponseCache(10_000, 16 * 1024 * 1024, Duration.ofMinutes(1));
+        server.get("/hello", helloCache, (httpExchange, params) -> {
             var simplePojo = new SimplePojo();
             simplePojo.setHello("Hello " + params.getOrDefault("name", "World"));
             simplePojo.setAge(12);
             return simplePojo;
         });
+        server.get("/numbers", (httpExchange, params) ->
+                LongStream.range(0, Long.parseLong(params.getOrDefault("count", "1000"))).boxed());
+        server.metricsEndpoint("/metrics");
         server.start();
     }
 
-    private <T> void handleResponse(HttpExchange httpExchange, T responseObject) throws IllegalAccessException, IOException {
+    private <T> void handleResponse(HttpExchange httpExchange, T responseObject) throws IOException {
+        var encoding = ResponseCompression.negotiate(httpExchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        if (ChunkedJsonWriter.isStreaming(responseObject)) {
+            ChunkedJsonWriter.write(httpExchange, responseObject, encoding);
+            return;
+        }
         OutputStream outputStream = httpExchange.getResponseBody();
-        var json = JsonParser.convertToJson(responseObject);
+        try (var json = JsonSerializer.serialize(responseObject)) {
+            httpExchange.getResponseHeaders().add("Content-type", "application/json");
+            httpExchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+            if (encoding != null && json.size() >= compressionMinBytes) {
+                var compressed = json.compress(encoding);
+                if (compressed.length < json.size()) {
+                    httpExchange.getResponseHeaders().add("Content-Encoding", encoding.token());
+                    httpExchange.sendResponseHeaders(200, compressed.length);
+                    outputStream.write(compressed);
+                    outputStream.close();
+                    return;
+                }
+            }
+            // Length in bytes, the string length was wrong for any non-ASCII response
+            httpExchange.sendResponseHeaders(200, json.size());
+            json.writeTo(outputStream);
+            outputStream.flush();
+            outputStream.close();
+        }
+    }
+
+    private void handleCachedResponse(HttpExchange httpExchange, ResponseCache cache, ResponseCache.Entry entry)
+            throws IOException {
+        var encoding = ResponseCompression.negotiate(httpExchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        var body = encoding == null ? null : cache.encoded(entry, encoding, compressionMinBytes);
+        var etag = body == null ? entry.etag() : entry.etag(encoding);
+        httpExchange.getResponseHeaders().add("ETag", etag);
+        httpExchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+        if (ResponseCache.matches(httpExchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            sendStatus(httpExchange, 304);
+            return;
+        }
+        if (body == null) {
+            body = entry.body();
+        } else {
+            httpExchange.getResponseHeaders().add("Content-Encoding", encoding.token());
+        }
         httpExchange.getResponseHeaders().add("Content-type", "application/json");
-        httpExchange.sendResponseHeaders(200, json.length());
-        outputStream.write(json.getBytes(StandardCharsets.UTF_8));
-        outputStream.flush();
-        outputStream.close();
+        httpExchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = httpExchange.getResponseBody()) {
+            outputStream.write(body);
+        }
     }
 
+    private void dispatch(HttpExchange httpExchange) throws IOException {
+        long start = System.nanoTime();
+        var method = HttpMethod.of(httpExchange.getRequestMethod());
+        var match = router.match(method, httpExchange.getRequestURI().getPath());
+        if (match.isFound()) {
+            boolean responded;
+            try {
+                responded = match.handler().handle(httpExchange, match, start);
+            } catch (IOException | RuntimeException e) {
+                // Thrown before anything was sent, the server answers it by dropping the exchange
+                int status = httpExchange.getResponseCode() < 0 ? 500 : httpExchange.getResponseCode();
+                metrics.record(match.pattern(), status, System.nanoTime() - start);
+                throw e;
+            }
+            if (responded) {
+                metrics.record(match.pattern(), httpExchange.getResponseCode(), System.nanoTime() - start);
+            }
+            return;
+        }
+        discardRequestBody(httpExchange);
+        sendStatus(httpExchange, match.isMethodNotAllowed() ? 405 : 404);
+        metrics.record(null, httpExchange.getResponseCode(), System.nanoTime() - start);
+    }
+
+    // HttpServer drops the connection when a response goes out before the request body was consumed,
+    // clients reusing it then fail. Closing the stream drains what is left, up to the server's drain limit.
+    private static void discardRequestBody(HttpExchange httpExchange) throws IOException {
+        httpExchange.getRequestBody().close();
+    }
+
+    /**
+     * Also registers {@link #metrics()} in JMX as {@code pl.piterowsky.javamix:type=SimpleServer,name=port-8080}
+     */
     public void start() {
-        this.server.start();
-        log.info("Server started at port: {}", PORT);
+        if (transport == Transport.NIO) {
+            startNonBlockingIO();
+        } else {
+            this.server.start();
+        }
+        metricsName = MBeans.register("SimpleServer", "port-" + PORT, metrics);
+        log.info("Server started at port: {} with {} execution over {} transport", PORT,
+                executionModel.stats().getModel(), transport);
     }
 
-    public <T> void get(String path, BiFunction<HttpExchange, Map<String, String>, T> function) {
-        server.createContext(path, httpExchange -> {
-            if (HttpMethod.GET.matches(httpExchange.getRequestMethod())) {
-                var uri = httpExchange.getRequestURI().toString();
-                var responseObject = function.apply(httpExchange, getParamsMap(uri));
-                try {
-                    handleResponse(httpExchange, responseObject);
-                    return;
-                } catch (Exception e) {
-                    log.error("Exception occurred while preparing response");
-                }
+    private void startNonBlockingIO() {
+        acceptor = new Thread(() -> {
+            try {
+                nonBlockingIO.start();
+            } catch (IOException e) {
+                log.error("Non blocking transport stopped", e);
             }
-            log.error("Only GET method can be handled");
-        });
+        }, "simple-server-acceptor");
+        // Not a daemon, it keeps the JVM running after main returns like the dispatcher thread of HttpServer does
+        acceptor.start();
+        try {
+            if (!nonBlockingIO.awaitStarted(Duration.ofSeconds(10))) {
+                throw new IllegalStateException("Non blocking transport did not start at port " + PORT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while starting the server", e);
+        }
     }
 
-    private Map<String, String> getParamsMap(String uri) {
-        if (uri.contains("?")) {
-            var paramsStr = uri.split("\\?")[1];
-            if (paramsStr.contains("=")) {
-                var paramsArray = paramsStr.split("=");
-                return paramsArray.length >= 2
-                        ? Collections.singletonMap(paramsArray[0], paramsArray[1])
-                        : Collections.emptyMap();
+    public void stop() {
+        if (metricsName != null) {
+            MBeans.unregister(metricsName);
+        }
+        if (transport == Transport.NIO) {
+            this.nonBlockingIO.stop();
+            awaitAcceptor();
+        } else {
+            this.server.stop(0);
+        }
+        this.inFlight.forEach(future -> future.cancel(true));
+        this.executionModel.shutdown();
+    }
+
+    // The port is released by the acceptor thread, waiting for it lets a new server bind right away
+    private void awaitAcceptor() {
+        try {
+            if (acceptor != null) {
+                acceptor.join(TimeUnit.SECONDS.toMillis(5));
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Responses shorter than this are sent uncompressed whatever the client accepts, defaults to 1KiB.
+     * {@link Integer#MAX_VALUE} turns compression of non streaming responses off.
+     */
+    public void setCompressionMinBytes(int compressionMinBytes) {
+        if (compressionMinBytes < 0) {
+            throw new IllegalArgumentException("Compression threshold cannot be negative, got " + compressionMinBytes);
         }
-        return Collections.emptyMap();
+        this.compressionMinBytes = compressionMinBytes;
+    }
+
+    public ExecutionStats executionStats() {
+        return executionModel.stats();
+    }
+
+    /**
+     * Async requests whose future has not completed yet, they hold no pool thread while waiting
+     */
+    public int asyncInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Paths may capture segments as {name} and end with a * or {name*} wildcard, captures are merged into params.
+     * Handlers returning a Stream, Iterator or Flow.Publisher are streamed as a chunked JSON array.
+     */
+    public <T> void get(String path, BiFunction<HttpExchange, Map<String, String>, T> function) {
+        router.add(HttpMethod.GET, path, jsonRoute(function, null));
+    }
+
+    /**
+     * Same as {@link #get} for handlers that are pure functions of their params, encoded responses are reused from
+     * the cache and revalidated with ETags. Streaming responses cannot be cached.
+     */
+    public <T> void get(String path, ResponseCache cache, BiFunction<HttpExchange, Map<String, String>, T> function) {
+        router.add(HttpMethod.GET, path, jsonRoute(function, cache));
+    }
+
+    /**
+     * Same as {@link #get} with application/x-www-form-urlencoded bodies parsed into params after the query ones
+     */
+    public <T> void post(String path, BiFunction<HttpExchange, Map<String, String>, T> function) {
+        router.add(HttpMethod.POST, path, jsonRoute(function, null));
+    }
+
+    /**
+     * Handler returns right away and the response is sent once the future completes, so a request waiting on I/O
+     * does not hold a pool thread. Futures still running after the timeout are cancelled and answered with 504.
+     */
+    public <T> void getAsync(String path, Duration timeout,
+                             BiFunction<HttpExchange, Map<String, String>, CompletableFuture<T>> function) {
+        router.add(HttpMethod.GET, path, asyncRoute(function, timeout));
+    }
+
+    public <T> void getAsync(String path, BiFunction<HttpExchange, Map<String, String>, CompletableFuture<T>> function) {
+        getAsync(path, DEFAULT_ASYNC_TIMEOUT, function);
+    }
+
+    public <T> void postAsync(String path, Duration timeout,
+                              BiFunction<HttpExchange, Map<String, String>, CompletableFuture<T>> function) {
+        router.add(HttpMethod.POST, path, asyncRoute(function, timeout));
     }
 
     public void post(String path, Consumer<HttpExchange> consumer) {
-        server.createContext(path, httpExchange -> {
-            if (HttpMethod.GET.matches(httpExchange.getRequestMethod())) {
-                consumer.accept(httpExchange);
-            }
+        router.add(HttpMethod.POST, path, (httpExchange, match, start) -> {
+            consumer.accept(httpExchange);
+            return true;
         });
     }
 
+    /**
+     * Serves {@link #metrics()} as JSON, latencies are in nanoseconds
+     */
+    public void metricsEndpoint(String path) {
+        get(path, (httpExchange, params) -> metrics());
+    }
+
+    public ServerMetrics.Snapshot metrics() {
+        return metrics.snapshot(nonBlockingIO != null ? nonBlockingIO.getMetrics() : null);
+    }
+
+    private <T> RouteHandler jsonRoute(BiFunction<HttpExchange, Map<String, String>, T> function, ResponseCache cache) {
+        return (httpExchange, match, start) -> {
+            var params = requestParams(httpExchange, match);
+            if (params == null) {
+                return true;
+            }
+            try {
+                if (cache != null) {
+                    var entry = cache.get(ResponseCache.key(match.pattern(), params), () -> {
+                        var responseObject = function.apply(httpExchange, params);
+                        if (ChunkedJsonWriter.isStreaming(responseObject)) {
+                            throw new IllegalStateException("Streaming response of " + match.pattern()
+                                    + " cannot be cached");
+                        }
+                        try (var json = JsonSerializer.serialize(responseObject)) {
+                            return json.toByteArray();
+                        }
+                    });
+                    handleCachedResponse(httpExchange, cache, entry);
+                } else {
+                    handleResponse(httpExchange, function.apply(httpExchange, params));
+                }
+            } catch (IOException | RuntimeException e) {
+                if (httpExchange.getResponseCode() >= 0) {
+                    // Part of the response is out, the transport drops the connection so the client sees it cut short
+                    throw e;
+                }
+                // Same answer as a failed async handler, e.g. for a cyclic or too deeply nested response object
+                log.error("Handler of {} failed", match.pattern(), e);
+                sendStatus(httpExchange, 500);
+            }
+            return true;
+        };
+    }
+
+    private <T> RouteHandler asyncRoute(BiFunction<HttpExchange, Map<String, String>, CompletableFuture<T>> function,
+                                        Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Timeout must be positive, got " + timeout);
+        }
+        long timeoutNanos = timeout.toNanos();
+        return (httpExchange, match, start) -> {
+            var params = requestParams(httpExchange, match);
+            if (params == null) {
+                return true;
+            }
+            CompletableFuture<T> future;
+            try {
+                future = function.apply(httpExchange, params);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            var handlerFuture = future;
+            inFlight.add(handlerFuture);
+            // The copy times out instead of the handler's own future, which is then cancelled explicitly
+            handlerFuture.copy()
+                    .orTimeout(timeoutNanos, TimeUnit.NANOSECONDS)
+                    .whenCompleteAsync((result, failure) -> {
+                        inFlight.remove(handlerFuture);
+                        if (failure != null) {
+                            handlerFuture.cancel(true);
+                        }
+                        completeAsync(httpExchange, match.pattern(), result, failure);
+                        metrics.record(match.pattern(), httpExchange.getResponseCode(), System.nanoTime() - start);
+                    }, completionExecutor);
+            return false;
+        };
+    }
+
+    private void completeAsync(HttpExchange httpExchange, String pattern, Object result, Throwable failure) {
+        try {
+            if (failure == null) {
+                handleResponse(httpExchange, result);
+                return;
+            }
+            var cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            if (cause instanceof TimeoutException) {
+                log.warn("Async handler of {} timed out", pattern);
+                sendStatus(httpExchange, 504);
+            } else if (cause instanceof CancellationException) {
+                sendStatus(httpExchange, 503);
+            } else {
+                log.error("Async handler of {} failed", pattern, cause);
+                sendStatus(httpExchange, 500);
+            }
+        } catch (Exception e) {
+            log.error("Exception occurred while preparing response", e);
+            abandon(httpExchange);
+        }
+    }
+
+    /**
+     * Ends an exchange whose response failed outside of the handler, one already under way is cut short when the
+     * transport allows it. HttpServer cannot drop a connection once its handler returned, closing is all that is left.
+     */
+    private static void abandon(HttpExchange httpExchange) {
+        if (httpExchange instanceof NioHttpExchange && httpExchange.getResponseCode() >= 0) {
+            ((NioHttpExchange) httpExchange).abandon();
+        } else {
+            httpExchange.close();
+        }
+    }
+
+    // The pool may be saturated by new requests, completing in place keeps the exchange from being stranded
+    private void executeOrRun(Runnable command) {
+        try {
+            executionModel.execute(command);
+        } catch (RejectedExecutionException e) {
+            command.run();
+        }
+    }
+
+    private static void sendStatus(HttpExchange httpExchange, int status) throws IOException {
+        httpExchange.sendResponseHeaders(status, -1);
+        httpExchange.close();
+    }
+
+    /**
+     * Reads query, form and path params, answers 413 and returns null when the form body is over the size limit
+     */
+    private static RequestParams requestParams(HttpExchange httpExchange, Router.Match<?> match) throws IOException {
+        var params = readParams(httpExchange);
+        if (params == null) {
+            sendStatus(httpExchange, 413);
+            return null;
+        }
+        var pathParams = match.pathParams();
+        if (!pathParams.isEmpty()) {
+            params.setOverrides(pathParams);
+        }
+        return params;
+    }
+
+    /**
+     * Returns null when the form body is over the size limit
+     */
+    private static RequestParams readParams(HttpExchange httpExchange) throws IOException {
+        var rawQuery = httpExchange.getRequestURI().getRawQuery();
+        var contentType = httpExchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType == null || !contentType.regionMatches(true, 0, FORM_CONTENT_TYPE, 0, FORM_CONTENT_TYPE.length())) {
+            discardRequestBody(httpExchange);
+            return RequestParams.of(rawQuery);
+        }
+        byte[] body;
+        try (var inputStream = httpExchange.getRequestBody()) {
+            body = inputStream.readNBytes(MAX_FORM_BYTES + 1);
+        }
+        if (body.length > MAX_FORM_BYTES) {
+            return null;
+        }
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return RequestParams.of(body, body.length);
+        }
+        // One buffer keeps a single pass over query and body, query pairs come first
+        var query = rawQuery.getBytes(StandardCharsets.ISO_8859_1);
+        var combined = Arrays.copyOf(query, query.length + 1 + body.length);
+        combined[query.length] = '&';
+        System.arraycopy(body, 0, combined, query.length + 1, body.length);
+        return RequestParams.of(combined, combined.length);
+    }
+
+    /**
+     * JDK runs the com.sun.net.httpserver server, NIO parses HTTP/1.1 on the non blocking event loops
+     */
+    public enum Transport {
+        JDK,
+        NIO
+    }
+
+    @FunctionalInterface
+    private interface RouteHandler {
+
+        /**
+         * @return false when the response is sent later, by whoever completes it
+         */
+        boolean handle(HttpExchange httpExchange, Router.Match<RouteHandler> match, long startNanos) throws IOException;
+
+    }
+
 }
 
 @Data
@@ -105,13 +513,43 @@ class SimplePojo {
 }
 
 enum HttpMethod {
-    GET, POST, UPDATE, DELETE;
+    GET, POST, UPDATE, DELETE, PUT, PATCH, HEAD, OPTIONS;
 
     public boolean matches(String method) {
         return this.toString().equals(method);
     }
+
+    /**
+     * Request method lookup without the exception valueOf throws for unknown names
+     */
+    static HttpMethod of(String method) {
+        switch (method) {
+            case "GET":
+                return GET;
+            case "POST":
+                return POST;
+            case "UPDATE":
+                return UPDATE;
+            case "DELETE":
+                return DELETE;
+            case "PUT":
+                return PUT;
+            case "PATCH":
+                return PATCH;
+            case "HEAD":
+                return HEAD;
+            case "OPTIONS":
+                return OPTIONS;
+            default:
+                return null;
+        }
+    }
 }
 
+/**
+ * Original reflective converter, responses go through {@link JsonSerializer}. Kept as the baseline
+ * JsonSerializerBenchmark measures it against, it only copes with flat beans of String and boxed number fields.
+ */
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 class JsonParser {
 
@@ -0,0 +1,39 @@
+package pl.piterowsky.javamix.simple.server;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+class WorkStealingExecution implements ExecutionModel {
+
+    private final ForkJoinPool pool;
+    private final int maxQueued;
+    private final LongAdder rejected = new LongAdder();
+
+    WorkStealingExecution(int parallelism, int maxQueued) {
+        // Async mode keeps submitted requests FIFO
+        this.pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.maxQueued = maxQueued;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (pool.getQueuedSubmissionCount() >= maxQueued) {
+            rejected.increment();
+            throw new RejectedExecutionException("Request queue is full");
+        }
+        pool.execute(command);
+    }
+
+    @Override
+    public ExecutionStats stats() {
+        long queued = pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+        return new ExecutionStats("work-stealing", pool.getActiveThreadCount(), queued, rejected.sum());
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+}
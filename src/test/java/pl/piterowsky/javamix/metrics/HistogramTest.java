@@ -0,0 +1,87 @@
+package pl.piterowsky.javamix.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramTest {
+
+    private static final Logger log = LogManager.getLogger(HistogramTest.class);
+
+    @Test
+    void bucketsAreContiguousAndBounded() {
+        for (long value = 0; value < 1 << 20; value++) {
+            int index = Histogram.indexOf(value);
+            assertTrue(Histogram.highestOf(index) >= value);
+            assertTrue(index == 0 || Histogram.highestOf(index - 1) < value);
+        }
+        long value = 123_456_789;
+        long highest = Histogram.highestOf(Histogram.indexOf(value));
+        assertTrue((highest - value) / (double) value < 0.035, "Bucket too wide: " + highest);
+    }
+
+    @Test
+    void percentilesStayWithinBucketError() {
+        var histogram = new Histogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        var snapshot = histogram.snapshot();
+
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(100_000_000, snapshot.getMax());
+        assertEquals(50_000_500, snapshot.getMean(), 1);
+        assertWithin(50_000_000, snapshot.getP50());
+        assertWithin(99_000_000, snapshot.getP99());
+        assertWithin(99_900_000, snapshot.getP999());
+    }
+
+    @Test
+    void mergesAndClampsValues() {
+        var first = new Histogram();
+        var second = new Histogram();
+        first.record(-5);
+        second.record(Long.MAX_VALUE);
+
+        var merged = Histogram.snapshot(List.of(first, second));
+
+        assertEquals(2, merged.getCount());
+        assertEquals(0, merged.getP50());
+        assertEquals(Histogram.MAX_VALUE, merged.getMax());
+    }
+
+    @Test
+    void concurrentRecordingLosesNothing() throws InterruptedException {
+        var histogram = new Histogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        int perThread = 1_000_000;
+        long start = System.nanoTime();
+        for (int t = 0; t < 4; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    histogram.record(i & 0xFFFF);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        log.info("Recorded {} values from 4 threads, {} ns of wall time per value", 4 * perThread,
+                (System.nanoTime() - start) / (4L * perThread));
+
+        assertEquals(4L * perThread, histogram.snapshot().getCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected * 1.035, "Expected about " + expected + ", got " + actual);
+    }
+
+}
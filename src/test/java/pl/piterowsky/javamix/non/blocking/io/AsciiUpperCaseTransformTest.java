@@ -0,0 +1,92 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AsciiUpperCaseTransformTest {
+
+    @Test
+    void matchesCharacterToUpperCaseForEveryByte() {
+        var bytes = new byte[256 * Long.BYTES];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i / Long.BYTES);
+        }
+        var expected = bytes.clone();
+        referenceUpperCase(ByteBuffer.wrap(expected));
+
+        var bb = ByteBuffer.wrap(bytes);
+        ByteTransform.asciiUpperCase().apply(bb);
+
+        assertArrayEquals(expected, bytes);
+    }
+
+    @Test
+    void mixedLanesInOneWord() {
+        for (int b = 0; b < 256; b++) {
+            long word = 0;
+            for (int lane = 0; lane < Long.BYTES; lane++) {
+                word |= (long) ((b + lane * 37) & 0xFF) << (lane * Byte.SIZE);
+            }
+            long expected = 0;
+            for (int lane = 0; lane < Long.BYTES; lane++) {
+                var c = (byte) (word >>> (lane * Byte.SIZE));
+                expected |= (long) (((byte) Character.toUpperCase((char) c)) & 0xFF) << (lane * Byte.SIZE);
+            }
+            assertEquals(expected, AsciiUpperCaseTransform.toUpperCase(word));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void respectsPositionAndLimitOnHeapAndDirectBuffers(boolean direct) {
+        var random = new Random(42);
+        for (int length = 0; length < 64; length++) {
+            var payload = new byte[length + 6];
+            random.nextBytes(payload);
+            var expected = payload.clone();
+            referenceUpperCase(ByteBuffer.wrap(expected, 3, length));
+
+            var bb = direct ? ByteBuffer.allocateDirect(payload.length) : ByteBuffer.allocate(payload.length);
+            bb.put(payload).position(3).limit(3 + length);
+            ByteTransform.asciiUpperCase().apply(bb);
+
+            assertEquals(3, bb.position());
+            var actual = new byte[payload.length];
+            bb.clear();
+            bb.get(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1024, 16 * 1024, 256 * 1024, 1024 * 1024})
+    void matchesPerByteLoopOnLargeDirectBuffers(int size) {
+        var payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        var expected = payload.clone();
+        referenceUpperCase(ByteBuffer.wrap(expected));
+
+        var bb = ByteBuffer.allocateDirect(size);
+        bb.put(payload).flip();
+        ByteTransform.asciiUpperCase().apply(bb);
+
+        var actual = new byte[size];
+        bb.get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    // The loop NonBlockingIO used before ByteTransform was introduced
+    private static void referenceUpperCase(ByteBuffer bb) {
+        for (int i = bb.position(); i < bb.limit(); i++) {
+            bb.put(i, (byte) Character.toUpperCase((char) bb.get(i)));
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ByteRangeTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "bytes=0-99, 0, 99",
+            "bytes=10-19, 10, 19",
+            "bytes=90-, 90, 99",
+            "bytes=90-500, 90, 99",
+            "bytes=-10, 90, 99",
+            "bytes=-500, 0, 99"
+    })
+    void resolvesAgainstFileSize(String spec, long first, long last) {
+        assertEquals(new ByteRange(first, last), ByteRange.parse(spec, 100));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"bytes=100-", "bytes=20-10", "bytes=-0", "bytes=a-b", "bytes=0-1,5-6", "items=0-1", "bytes=5"})
+    void rejectsUnsatisfiableOrMalformed(String spec) {
+        assertNull(ByteRange.parse(spec, 100));
+    }
+
+}
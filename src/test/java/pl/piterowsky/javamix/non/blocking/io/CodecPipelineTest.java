@@ -0,0 +1,73 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CodecPipelineTest {
+
+    @Test
+    void echoedLinesAreCopiedOutOfThePooledReadBuffer() throws Exception {
+        // Lines longer than a read go through the carried over tail as well
+        var options = new NonBlockingIOOptions().eventLoops(1).readBufferSize(7)
+                .handler(CodecPipeline.builder()
+                        .framing(Framing.lines(100))
+                        .inbound(ByteTransform.asciiUpperCase())
+                        .handler(CodecPipeline::write)
+                        .factory());
+        try (var server = new RunningServer(options)) {
+            try (var socket = server.connect()) {
+                socket.getOutputStream().write("hello world\r\nsecond line here\nx\n".getBytes(StandardCharsets.US_ASCII));
+                var reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+                assertEquals("HELLO WORLD", reader.readLine());
+                assertEquals("SECOND LINE HERE", reader.readLine());
+                assertEquals("X", reader.readLine());
+
+                socket.getOutputStream().write(new byte[200]);
+                assertNull(reader.readLine());
+            }
+            // An echoed frame released as if it were the handler's own would drive the count below zero
+            assertEquals(0, server.outstandingBuffers());
+        }
+    }
+
+    @Test
+    void echoesLengthPrefixedFramesSpanningReads() throws Exception {
+        var options = new NonBlockingIOOptions().eventLoops(1).readBufferSize(100)
+                .handler(CodecPipeline.builder()
+                        .framing(Framing.lengthPrefixed(1 << 20))
+                        .handler(CodecPipeline::write)
+                        .factory());
+        var random = new Random(42);
+        int[] sizes = {0, 1, 95, 100, 5000, 300_000};
+        try (var server = new RunningServer(options)) {
+            try (var socket = server.connect()) {
+                var out = new DataOutputStream(socket.getOutputStream());
+                var in = new DataInputStream(socket.getInputStream());
+                for (int size : sizes) {
+                    var payload = new byte[size];
+                    random.nextBytes(payload);
+                    out.writeInt(size);
+                    out.write(payload);
+
+                    assertEquals(size, in.readInt());
+                    var echoed = new byte[size];
+                    in.readFully(echoed);
+                    assertArrayEquals(payload, echoed);
+                }
+            }
+            assertEquals(0, server.outstandingBuffers());
+        }
+    }
+
+}
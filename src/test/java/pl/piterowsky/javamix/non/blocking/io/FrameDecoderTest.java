@@ -0,0 +1,71 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FrameDecoderTest {
+
+    @Test
+    void linesSplitAcrossReads() {
+        var decoder = new LineFrameDecoder(64);
+        var in = ByteBuffer.allocate(64);
+        List<String> frames = new ArrayList<>();
+
+        for (String chunk : new String[]{"hel", "lo\r\nwor", "ld\n\nlast"}) {
+            in.put(ascii(chunk)).flip();
+            ByteBuffer frame;
+            while ((frame = decoder.decode(in)) != null) {
+                frames.add(text(frame));
+            }
+            in.compact();
+        }
+
+        assertEquals(List.of("hello", "world", ""), frames);
+    }
+
+    @Test
+    void lineLongerThanLimitIsRejectedBeforeItsEnd() {
+        var decoder = new LineFrameDecoder(4);
+        assertThrows(IllegalStateException.class, () -> decoder.decode(ByteBuffer.wrap(ascii("abcdef"))));
+    }
+
+    @Test
+    void lengthPrefixedFramesWaitForTheWholeBody() {
+        var decoder = new LengthFieldFrameDecoder(16);
+        var in = ByteBuffer.allocate(32);
+        in.putInt(5).put(ascii("ab")).flip();
+        assertNull(decoder.decode(in));
+        assertEquals(0, in.position());
+
+        in.compact().put(ascii("cde")).putInt(0).flip();
+        assertEquals("abcde", text(decoder.decode(in)));
+        assertEquals("", text(decoder.decode(in)));
+        assertNull(decoder.decode(in));
+    }
+
+    @Test
+    void lengthAboveLimitIsRejected() {
+        var decoder = new LengthFieldFrameDecoder(16);
+        var in = ByteBuffer.allocate(8).putInt(17).flip();
+        assertThrows(IllegalStateException.class, () -> decoder.decode(in));
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String text(ByteBuffer frame) {
+        var bytes = new byte[frame.remaining()];
+        frame.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,120 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpRequestDecoderTest {
+
+    @Test
+    void requestSplitAcrossReads() {
+        var decoder = new HttpRequestDecoder(1024, 1024);
+        List<HttpRequestDecoder.HttpRequest> requests = new ArrayList<>();
+
+        for (String chunk : new String[]{"POST /users?id=1 HT", "TP/1.1\r\nContent-Length: 5\r", "\n\r\nab", "cde"}) {
+            var in = ByteBuffer.wrap(ascii(chunk));
+            var request = decoder.decode(in);
+            if (request != null) {
+                requests.add(request);
+            }
+            assertFalse(in.hasRemaining());
+        }
+
+        assertEquals(1, requests.size());
+        var request = requests.get(0);
+        assertEquals("POST", request.method);
+        assertEquals("/users", request.uri.getPath());
+        assertEquals("id=1", request.uri.getRawQuery());
+        assertEquals("5", request.headers.getFirst("content-length"));
+        assertEquals("abcde", new String(request.body, StandardCharsets.US_ASCII));
+        assertTrue(request.keepAlive);
+    }
+
+    @Test
+    void pipelinedRequestsAreDecodedOneByOne() {
+        var decoder = new HttpRequestDecoder(1024, 1024);
+        var in = ByteBuffer.wrap(ascii("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\nConnection: close\r\n\r\nGET /c"));
+
+        assertEquals("/a", decoder.decode(in).uri.getPath());
+        var second = decoder.decode(in);
+        assertEquals("/b", second.uri.getPath());
+        assertFalse(second.keepAlive);
+        assertNull(decoder.decode(in));
+    }
+
+    @Test
+    void http10ClosesUnlessAskedToKeepAlive() {
+        var decoder = new HttpRequestDecoder(1024, 1024);
+        assertFalse(decoder.decode(ByteBuffer.wrap(ascii("GET / HTTP/1.0\r\n\r\n"))).keepAlive);
+        assertTrue(decoder.decode(ByteBuffer.wrap(ascii("GET / HTTP/1.0\r\nConnection: Keep-Alive\r\n\r\n"))).keepAlive);
+    }
+
+    @Test
+    void bodyLargerThanTheFirstAllocationIsReassembled() {
+        var decoder = new HttpRequestDecoder(1024, 1 << 20);
+        var body = new byte[50_000];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        assertNull(decoder.decode(ByteBuffer.wrap(ascii("PUT / HTTP/1.1\r\nContent-Length: 50000\r\n\r\n"))));
+
+        HttpRequestDecoder.HttpRequest request = null;
+        for (int offset = 0; offset < body.length; offset += 3_000) {
+            request = decoder.decode(ByteBuffer.wrap(body, offset, Math.min(3_000, body.length - offset)));
+        }
+
+        assertArrayEquals(body, request.body);
+    }
+
+    @Test
+    void continueIsRequestedUntilTheBodyArrives() {
+        var decoder = new HttpRequestDecoder(1024, 1024);
+        var head = "POST / HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 2\r\n\r\n";
+        assertNull(decoder.decode(ByteBuffer.wrap(ascii(head))));
+        assertTrue(decoder.takeContinue());
+        assertFalse(decoder.takeContinue());
+        assertEquals(2, decoder.decode(ByteBuffer.wrap(ascii("ok"))).body.length);
+    }
+
+    @Test
+    void limitsAndMalformedRequestsAreRejected() {
+        assertStatus(431, new HttpRequestDecoder(64, 1024), "GET / HTTP/1.1\r\nX: " + "a".repeat(64));
+        assertStatus(413, new HttpRequestDecoder(1024, 4), "POST / HTTP/1.1\r\nContent-Length: 5\r\n\r\n");
+        assertStatus(400, new HttpRequestDecoder(1024, 1024), "GET /\r\n\r\n");
+        assertStatus(400, new HttpRequestDecoder(1024, 1024), "GET / HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+        assertStatus(400, new HttpRequestDecoder(1024, 1024), "GET / HTTP/1.1\r\nBad Name: x\r\n\r\n");
+        assertStatus(505, new HttpRequestDecoder(1024, 1024), "GET / HTTP/2.0\r\n\r\n");
+        assertStatus(501, new HttpRequestDecoder(1024, 1024), "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n");
+    }
+
+    @Test
+    void bareLineBreaksInHeadersAreRejected() {
+        assertStatus(400, new HttpRequestDecoder(1024, 1024), "GET / HTTP/1.1\r\nX-A: a\nb\r\n\r\n");
+        assertStatus(400, new HttpRequestDecoder(1024, 1024), "GET / HTTP/1.1\r\nX-A: a\rb\r\n\r\n");
+        assertStatus(400, new HttpRequestDecoder(1024, 1024), "GET / HTTP/1.1\r\nX-A\nB: a\r\n\r\n");
+        var decoder = new HttpRequestDecoder(1024, 1024);
+        assertEquals("a\tb", decoder.decode(ByteBuffer.wrap(ascii("GET / HTTP/1.1\r\nX-A: a\tb\r\n\r\n")))
+                .headers.getFirst("X-A"));
+    }
+
+    private static void assertStatus(int status, HttpRequestDecoder decoder, String request) {
+        var rejected = assertThrows(HttpRequestDecoder.Rejected.class,
+                () -> decoder.decode(ByteBuffer.wrap(ascii(request))));
+        assertEquals(status, rejected.getStatus());
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
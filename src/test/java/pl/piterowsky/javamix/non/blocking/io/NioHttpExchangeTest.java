@@ -0,0 +1,135 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NioHttpExchangeTest {
+
+    private static final byte[] HELLO = "hello".getBytes(StandardCharsets.US_ASCII);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void keepAliveConnectionServesFixedHeadAndChunkedResponses() throws Exception {
+        var options = new NonBlockingIOOptions().eventLoops(1).http(NioHttpExchangeTest::handle, executor);
+        try (var server = new RunningServer(options); var socket = server.connect()) {
+            var out = socket.getOutputStream();
+            var in = new BufferedInputStream(socket.getInputStream());
+
+            var fixed = exchange(out, in, "GET", "/fixed");
+            assertEquals("5", fixed.headers.get("content-length"));
+            assertEquals("hello", fixed.body);
+
+            // The handler writes the body as it would for GET, only its length goes out
+            var head = exchange(out, in, "HEAD", "/fixed");
+            assertEquals(200, head.status);
+            assertEquals("5", head.headers.get("content-length"));
+            assertEquals("", head.body);
+
+            var chunked = exchange(out, in, "GET", "/chunked");
+            assertEquals("chunked", chunked.headers.get("transfer-encoding"));
+            assertEquals("hello world", chunked.body);
+
+            // Every response so far came over this one connection and none of them asked to close it
+            var last = exchange(out, in, "GET", "/fixed");
+            assertEquals("hello", last.body);
+            assertNull(last.headers.get("connection"));
+        }
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestURI().getPath().equals("/chunked")) {
+            exchange.sendResponseHeaders(200, 0);
+            try (var body = exchange.getResponseBody()) {
+                body.write(HELLO);
+                body.flush();
+                body.write(" world".getBytes(StandardCharsets.US_ASCII));
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(200, HELLO.length);
+        try (var body = exchange.getResponseBody()) {
+            body.write(HELLO);
+        }
+    }
+
+    private static Response exchange(OutputStream out, InputStream in, String method, String path)
+            throws IOException {
+        out.write((method + " " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return Response.read(in, method.equals("HEAD"));
+    }
+
+    private static final class Response {
+
+        private final int status;
+        private final Map<String, String> headers;
+        private final String body;
+
+        private Response(int status, Map<String, String> headers, String body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        static Response read(InputStream in, boolean head) throws IOException {
+            int status = Integer.parseInt(readLine(in).split(" ")[1]);
+            Map<String, String> headers = new HashMap<>();
+            for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+                int colon = line.indexOf(':');
+                headers.put(line.substring(0, colon).toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+            if (head) {
+                return new Response(status, headers, "");
+            }
+            var body = new ByteArrayOutputStream();
+            if ("chunked".equals(headers.get("transfer-encoding"))) {
+                for (int size = Integer.parseInt(readLine(in), 16); size > 0; size = Integer.parseInt(readLine(in), 16)) {
+                    body.write(in.readNBytes(size));
+                    readLine(in);
+                }
+                readLine(in);
+            } else {
+                body.write(in.readNBytes(Integer.parseInt(headers.getOrDefault("content-length", "0"))));
+            }
+            return new Response(status, headers, body.toString(StandardCharsets.US_ASCII));
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            var line = new StringBuilder();
+            for (int b = in.read(); b != '\n'; b = in.read()) {
+                if (b < 0) {
+                    throw new EOFException("Connection closed after: " + line);
+                }
+                if (b != '\r') {
+                    line.append((char) b);
+                }
+            }
+            return line.toString();
+        }
+
+    }
+
+}
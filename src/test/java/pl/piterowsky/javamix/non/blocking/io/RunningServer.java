@@ -0,0 +1,65 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link NonBlockingIO} at a port picked by the system, for tests talking to it over real sockets
+ */
+final class RunningServer implements AutoCloseable {
+
+    private final NonBlockingIO io;
+    private final Thread acceptor;
+
+    RunningServer(NonBlockingIOOptions options) throws InterruptedException {
+        this.io = new NonBlockingIO(options.port(0));
+        this.acceptor = new Thread(() -> {
+            try {
+                io.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, "test-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        if (!io.awaitStarted(Duration.ofSeconds(5))) {
+            throw new IllegalStateException("Server did not start");
+        }
+    }
+
+    NonBlockingIO io() {
+        return io;
+    }
+
+    int port() {
+        return io.localPort();
+    }
+
+    Socket connect() throws IOException {
+        var socket = new Socket("localhost", port());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    /**
+     * Pooled buffers not returned yet, waits a while for closed connections to be released on the loop threads
+     */
+    long outstandingBuffers() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        long outstanding;
+        while ((outstanding = io.getBufferPoolStats().getOutstanding()) != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return outstanding;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        io.stop();
+        acceptor.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+}
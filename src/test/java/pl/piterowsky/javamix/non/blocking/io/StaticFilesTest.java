@@ -0,0 +1,133 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StaticFilesTest {
+
+    private static final int SMALL_SIZE = 1000;
+    private static final int LARGE_SIZE = 2 * 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private Path root;
+    private byte[] small;
+    private byte[] large;
+
+    @BeforeEach
+    void writeFiles() throws IOException {
+        root = Files.createDirectory(directory.resolve("root"));
+        var random = new Random(42);
+        small = new byte[SMALL_SIZE];
+        random.nextBytes(small);
+        large = new byte[LARGE_SIZE];
+        random.nextBytes(large);
+        Files.write(root.resolve("small.bin"), small);
+        Files.write(root.resolve("large.bin"), large);
+        Files.createDirectory(root.resolve("directory"));
+        Files.writeString(directory.resolve("secret.txt"), "secret");
+    }
+
+    @Test
+    void servesMappedAndTransferredFilesInFullAndInRanges() throws Exception {
+        var files = new StaticFiles(root);
+        try (var server = new RunningServer(new NonBlockingIOOptions().eventLoops(1).staticFiles(files));
+             var socket = server.connect()) {
+            var in = new DataInputStream(socket.getInputStream());
+            request(socket.getOutputStream(), "GET /small.bin", "GET /large.bin", "GET /large.bin bytes=10-19",
+                    "GET /small.bin bytes=-10", "GET /small.bin bytes=5000-");
+
+            assertEquals("OK 0-999/1000", readLine(in));
+            assertArrayEquals(small, readBytes(in, SMALL_SIZE));
+            assertEquals("OK 0-" + (LARGE_SIZE - 1) + "/" + LARGE_SIZE, readLine(in));
+            assertArrayEquals(large, readBytes(in, LARGE_SIZE));
+            assertEquals("OK 10-19/" + LARGE_SIZE, readLine(in));
+            assertArrayEquals(Arrays.copyOfRange(large, 10, 20), readBytes(in, 10));
+            assertEquals("OK 990-999/1000", readLine(in));
+            assertArrayEquals(Arrays.copyOfRange(small, 990, 1000), readBytes(in, 10));
+            assertEquals("ERR 416 Range not satisfiable", readLine(in));
+        }
+        // Only the small file fits under the default mapping limit, the large one went out as file regions
+        assertEquals(SMALL_SIZE, files.mappedBytes());
+    }
+
+    @Test
+    void pathsOutsideTheRootAreNotFound() throws Exception {
+        try (var server = new RunningServer(new NonBlockingIOOptions().eventLoops(1).staticFiles(new StaticFiles(root)));
+             var socket = server.connect()) {
+            var in = new DataInputStream(socket.getInputStream());
+            request(socket.getOutputStream(), "GET /../secret.txt", "GET /directory/../../secret.txt",
+                    "GET /missing.bin", "GET /directory");
+
+            for (int i = 0; i < 4; i++) {
+                assertEquals("ERR 404 Not found", readLine(in));
+            }
+        }
+    }
+
+    @Test
+    void queuedRegionsCountAsPendingBytesUntilSent() throws Exception {
+        int requests = 32;
+        try (var server = new RunningServer(new NonBlockingIOOptions().eventLoops(1).staticFiles(new StaticFiles(root)));
+             var socket = server.connect()) {
+            var lines = new String[requests];
+            Arrays.fill(lines, "GET /large.bin");
+            request(socket.getOutputStream(), lines);
+
+            // Far more than socket buffers hold stays queued while the client does not read
+            long queued = LARGE_SIZE * (requests / 2L);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (server.io().pendingBytes() < queued && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(server.io().pendingBytes() >= queued, "Pending bytes: " + server.io().pendingBytes());
+
+            var in = new DataInputStream(socket.getInputStream());
+            for (int i = 0; i < requests; i++) {
+                assertEquals("OK 0-" + (LARGE_SIZE - 1) + "/" + LARGE_SIZE, readLine(in));
+                assertArrayEquals(large, readBytes(in, LARGE_SIZE));
+            }
+            assertEquals(0, server.io().pendingBytes());
+        }
+    }
+
+    private static void request(OutputStream out, String... lines) throws IOException {
+        out.write((String.join("\n", lines) + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        var bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        var line = new StringBuilder();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                throw new IOException("Connection closed after: " + line);
+            }
+            line.append((char) b);
+        }
+        return line.toString();
+    }
+
+}
@@ -0,0 +1,93 @@
+package pl.piterowsky.javamix.non.blocking.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    @Test
+    void firesOnlyExpiredTimeouts() {
+        var wheel = new TimerWheel(8, 10, 0);
+        var early = new TimerWheel.Timeout<>("early");
+        var late = new TimerWheel.Timeout<>("late");
+        wheel.schedule(early, 25);
+        wheel.schedule(late, 1000);
+
+        assertEquals(List.of(), advance(wheel, 20));
+        assertEquals(List.of("early"), advance(wheel, 30));
+        assertFalse(early.isScheduled());
+        assertTrue(late.isScheduled());
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    void deadlinesBeyondOneRotationWaitForTheirRound() {
+        var wheel = new TimerWheel(4, 10, 0);
+        var timeout = new TimerWheel.Timeout<>("far");
+        wheel.schedule(timeout, 95);
+
+        for (long now = 10; now < 100; now += 10) {
+            assertEquals(List.of(), advance(wheel, now));
+        }
+        assertEquals(List.of("far"), advance(wheel, 100));
+    }
+
+    @Test
+    void longPauseFiresEverythingOverdue() {
+        var wheel = new TimerWheel(4, 10, 0);
+        for (int i = 1; i <= 20; i++) {
+            wheel.schedule(new TimerWheel.Timeout<>(i), i * 10L);
+        }
+
+        assertEquals(20, advance(wheel, 10_000).size());
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.millisToNextTick(10_000));
+    }
+
+    @Test
+    void cancelAndRescheduleReuseTheSameNode() {
+        var wheel = new TimerWheel(8, 10, 0);
+        var first = new TimerWheel.Timeout<>("first");
+        var second = new TimerWheel.Timeout<>("second");
+        wheel.schedule(first, 20);
+        wheel.schedule(second, 20);
+
+        wheel.cancel(first);
+        wheel.cancel(first);
+        wheel.schedule(second, 50);
+
+        assertEquals(1, wheel.size());
+        assertEquals(List.of(), advance(wheel, 40));
+        assertEquals(List.of("second"), advance(wheel, 50));
+    }
+
+    @Test
+    void handlerMayRescheduleTheExpiredTimeout() {
+        var wheel = new TimerWheel(8, 10, 0);
+        var timeout = new TimerWheel.Timeout<>("periodic");
+        wheel.schedule(timeout, 10);
+        List<Object> fired = new ArrayList<>();
+
+        wheel.advance(10, expired -> {
+            fired.add(expired.attachment());
+            wheel.schedule(expired, 30);
+        });
+        wheel.advance(20, expired -> fired.add(expired.attachment()));
+        wheel.advance(30, expired -> fired.add(expired.attachment()));
+
+        assertEquals(List.of("periodic", "periodic"), fired);
+    }
+
+    private static List<Object> advance(TimerWheel wheel, long now) {
+        List<Object> fired = new ArrayList<>();
+        wheel.advance(now, timeout -> fired.add(timeout.attachment()));
+        return fired;
+    }
+
+}
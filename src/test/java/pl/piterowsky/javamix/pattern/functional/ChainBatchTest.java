@@ -0,0 +1,80 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChainBatchTest {
+
+    @Test
+    void everySubjectGoesThroughTheWholeChain() {
+        var subjects = Stream.generate(ChainOfResponsibilityPattern.Subject::new).limit(10_000)
+                .collect(Collectors.toList());
+        var batch = new ChainBatch<>(ChainOfResponsibilityPattern.FunctionalWay.TRANSITIONS).chunkSize(100);
+
+        var results = batch.applyAll(subjects);
+
+        assertEquals(subjects.size(), results.size());
+        for (int i = 0; i < subjects.size(); i++) {
+            assertEquals(subjects.get(i), results.get(i));
+            assertEquals(ChainOfResponsibilityPattern.State.STATE_3, results.get(i).getCurrentState());
+        }
+        assertEquals(10_000, batch.completed());
+    }
+
+    @Test
+    void resultsKeepTheOrderOfTheSubjects() {
+        List<UnaryOperator<Integer>> steps = List.of(i -> i * 2, i -> i + 1);
+        var subjects = new LinkedList<>(IntStream.range(0, 5_000).boxed().collect(Collectors.toList()));
+        var pool = new ForkJoinPool(4);
+
+        try {
+            var results = new ChainBatch<>(steps).chunkSize(64).pool(pool).applyAll(subjects);
+
+            for (int i = 0; i < subjects.size(); i++) {
+                assertEquals(i * 2 + 1, results.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void spliteratorResultsGoToTheSink() {
+        List<UnaryOperator<Integer>> steps = List.of(i -> i + 1);
+        var batch = new ChainBatch<>(steps).chunkSize(16);
+        var sink = new ConcurrentLinkedQueue<Integer>();
+
+        long sized = batch.applyAll(new ArrayList<>(List.of(1, 2, 3)).spliterator(), sink::add);
+        long unsized = batch.applyAll(Stream.iterate(0, i -> i < 1_000, i -> i + 1).spliterator(), sink::add);
+
+        assertEquals(3, sized);
+        assertEquals(1_000, unsized);
+        assertEquals(1_003, sink.size());
+        assertTrue(sink.containsAll(List.of(2, 3, 4, 1, 1_000)));
+        assertEquals(1_003, batch.completed());
+    }
+
+    @Test
+    void stepFailuresReachTheCaller() {
+        List<UnaryOperator<Integer>> steps = List.of(i -> 10 / i);
+        var batch = new ChainBatch<>(steps);
+
+        assertThrows(ArithmeticException.class, () -> batch.applyAll(List.of(1, 0, 2)));
+        assertEquals(1, batch.completed());
+        assertThrows(IllegalArgumentException.class, () -> new ChainBatch<>(List.<UnaryOperator<Integer>>of()));
+    }
+
+}
@@ -0,0 +1,99 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeliveryPlanRegistryTest {
+
+    private final StrategyPattern.Item item = new StrategyPattern.Item(1L, BigDecimal.valueOf(120.99));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void compiledPlansAreServedUntilTheFileExists() throws IOException {
+        var registry = new DeliveryPlanRegistry(directory.resolve("plans.properties"));
+
+        assertFalse(registry.reloadIfModified());
+        assertEquals(Set.of("basic", "premium"), registry.keys());
+        for (StrategyPattern.FunctionalWay.Plan plan : StrategyPattern.FunctionalWay.Plan.values()) {
+            assertEquals(plan.deliveryPrice.apply(item), registry.priceFor(plan.name().toLowerCase(), item));
+        }
+        assertThrows(IllegalArgumentException.class, () -> registry.priceFor("express", item));
+    }
+
+    @Test
+    void reloadSwapsThePlansAndTheirCachedPrices() throws IOException {
+        var file = directory.resolve("plans.properties");
+        write(file, "basic.percentage=0.025\nexpress.percentage=0.1\nexpress.fee=5\n");
+        var registry = new DeliveryPlanRegistry(file, 16);
+        assertTrue(registry.reloadIfModified());
+        assertFalse(registry.reloadIfModified());
+
+        var express = registry.priceFor("express", item);
+        assertEquals(new BigDecimal("17.099"), express);
+        assertSame(express, registry.priceFor("express", new StrategyPattern.Item(2L, BigDecimal.valueOf(120.99))));
+
+        write(file, "basic.percentage=0.025\nexpress.percentage=0.2\nexpress.fee=5\n");
+        registry.reload();
+
+        assertEquals(2, registry.version());
+        assertEquals(new BigDecimal("29.198"), registry.priceFor("express", item));
+        assertEquals(Set.of("basic", "express"), registry.keys());
+    }
+
+    @Test
+    void malformedFileKeepsThePreviousPlans() throws IOException {
+        var file = directory.resolve("plans.properties");
+        write(file, "basic.percentage=0.05\n");
+        var registry = new DeliveryPlanRegistry(file);
+        registry.reload();
+        var before = registry.priceFor("basic", item);
+
+        write(file, "basic.percentage=five\n");
+        assertThrows(IllegalArgumentException.class, registry::reload);
+        write(file, "basic.fee=1\n");
+        assertThrows(IllegalArgumentException.class, registry::reload);
+
+        assertEquals(1, registry.version());
+        assertEquals(before, registry.priceFor("basic", item));
+    }
+
+    @Test
+    void unchangedPlansKeepTheSnapshot() throws IOException {
+        var file = directory.resolve("plans.properties");
+        write(file, "basic.percentage=0.025\n");
+        var registry = new DeliveryPlanRegistry(file);
+        registry.reload();
+        var first = registry.priceFor("basic", item);
+
+        write(file, "# same plans\nbasic.percentage=0.025\n");
+        registry.reload();
+
+        assertEquals(1, registry.version());
+        assertSame(first, registry.priceFor("basic", item));
+    }
+
+    /**
+     * Replaces the file in one move, the way plans should be deployed
+     */
+    private void write(Path file, String content) throws IOException {
+        var temporary = Files.createTempFile(directory, "plans", ".tmp");
+        Files.writeString(temporary, content);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
@@ -0,0 +1,84 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DeliveryPriceBatchTest {
+
+    @Test
+    void exactPricesMatchTheBigDecimalPath() {
+        var items = new Random(7).longs(20_000, 0, 10_000_000)
+                .mapToObj(cents -> new StrategyPattern.Item(cents, BigDecimal.valueOf(cents, 2)))
+                .collect(Collectors.toList());
+        var prices = DeliveryPriceBatch.minorUnits(items, 2);
+        var pool = new ForkJoinPool(4);
+
+        try {
+            for (StrategyPattern.FunctionalWay.Plan plan : StrategyPattern.FunctionalWay.Plan.values()) {
+                var batch = new DeliveryPriceBatch(plan, 2).chunkSize(1_000).pool(pool);
+                var results = new long[prices.length];
+                batch.price(prices, results);
+
+                for (int i = 0; i < items.size(); i++) {
+                    // equals compares the scale too
+                    var expected = plan.deliveryPrice.apply(items.get(i));
+                    assertEquals(expected, BigDecimal.valueOf(results[i], batch.exactScale()));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void roundedPricesMatchSetScale() {
+        var batch = new DeliveryPriceBatch(StrategyPattern.FunctionalWay.Plan.BASIC, 2);
+        var prices = LongStream.rangeClosed(-500, 500).toArray();
+        var results = new long[prices.length];
+
+        for (RoundingMode rounding : RoundingMode.values()) {
+            if (rounding == RoundingMode.UNNECESSARY) {
+                continue;
+            }
+            batch.price(prices, results, 2, rounding);
+            for (int i = 0; i < prices.length; i++) {
+                var expected = BigDecimal.valueOf(prices[i], 2).multiply(StrategyPattern.BASIC_PERCENTAGE)
+                        .add(StrategyPattern.DELIVERY_FEE).setScale(2, rounding);
+                assertEquals(expected, BigDecimal.valueOf(results[i], 2), rounding + " of " + prices[i]);
+            }
+        }
+    }
+
+    @Test
+    void resultsCanBeWrittenOverThePricesAndScaledUp() {
+        var batch = new DeliveryPriceBatch(StrategyPattern.FunctionalWay.Plan.BASIC, 2);
+        long[] prices = {12099, 0};
+
+        batch.price(prices, prices, 6, RoundingMode.UNNECESSARY);
+
+        assertArrayEquals(new long[]{4_024_750, 1_000_000}, prices);
+    }
+
+    @Test
+    void impossibleResultsThrow() {
+        var batch = new DeliveryPriceBatch(StrategyPattern.FunctionalWay.Plan.BASIC, 2);
+
+        assertThrows(ArithmeticException.class, () -> batch.price(new long[]{12099}, new long[1], 2,
+                RoundingMode.UNNECESSARY));
+        assertThrows(ArithmeticException.class, () -> batch.price(new long[]{Long.MAX_VALUE / 10}, new long[1]));
+        assertThrows(ArithmeticException.class, () -> DeliveryPriceBatch.minorUnits(
+                List.of(new StrategyPattern.Item(1L, new BigDecimal("1.005"))), 2));
+    }
+
+}
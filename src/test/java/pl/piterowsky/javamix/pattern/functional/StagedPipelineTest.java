@@ -0,0 +1,149 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StagedPipelineTest {
+
+    @Test
+    void everyItemGoesThroughEveryStage() throws InterruptedException {
+        var imperativeChain = new ChainOfResponsibilityPattern.ImperativeWay.Step1();
+        imperativeChain.andThen(new ChainOfResponsibilityPattern.ImperativeWay.Step2())
+                .andThen(new ChainOfResponsibilityPattern.ImperativeWay.Step3());
+        var results = new ConcurrentLinkedQueue<ChainOfResponsibilityPattern.Subject>();
+
+        try (var pipeline = StagedPipeline.<ChainOfResponsibilityPattern.Subject>builder()
+                .stages(imperativeChain.steps(), 2)
+                .batchSize(8)
+                .sink(results::add)
+                .start()) {
+            for (int i = 0; i < 5_000; i++) {
+                pipeline.submit(new ChainOfResponsibilityPattern.Subject());
+            }
+            assertTrue(pipeline.awaitIdle(Duration.ofSeconds(10)));
+
+            assertEquals(5_000, results.size());
+            results.forEach(s -> assertEquals(ChainOfResponsibilityPattern.State.STATE_3, s.getCurrentState()));
+            var stats = pipeline.stats();
+            assertEquals(List.of("step-1", "step-2", "step-3"), List.of(stats.get(0).getName(),
+                    stats.get(1).getName(), stats.get(2).getName()));
+            for (StageStats stage : stats) {
+                assertEquals(5_000, stage.getProcessed());
+                assertEquals(5_000, stage.getLatency().getCount());
+                assertEquals(0, stage.getDepth());
+                assertTrue(stage.getThroughput() > 0);
+            }
+            // Nothing went through since the previous call
+            assertEquals(0, pipeline.stats().get(0).getThroughput());
+        }
+    }
+
+    @Test
+    void itemsAcceptedWhileClosingStillReachTheSink() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            var accepted = new LongAdder();
+            var delivered = new LongAdder();
+            var pipeline = StagedPipeline.<Integer>builder().stage("pass", i -> i, 1)
+                    .sink(i -> delivered.increment()).start();
+            var submitter = new Thread(() -> {
+                try {
+                    while (true) {
+                        pipeline.submit(1);
+                        accepted.increment();
+                    }
+                } catch (IllegalStateException | InterruptedException e) {
+                    // Closed, every submit which returned normally was accepted
+                }
+            });
+            submitter.start();
+            Thread.sleep(1);
+            pipeline.close();
+            submitter.join();
+
+            assertEquals(accepted.sum(), delivered.sum());
+        }
+    }
+
+    @Test
+    void fullStageHoldsBackSubmissions() throws InterruptedException {
+        var release = new CountDownLatch(1);
+        UnaryOperator<Integer> blocked = i -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return i;
+        };
+        var pipeline = StagedPipeline.<Integer>builder().stage("blocked", blocked, 1, 4).batchSize(1).start();
+
+        // One item is held by the worker, the rest fills the queue
+        int accepted = 0;
+        while (pipeline.trySubmit(accepted)) {
+            accepted++;
+        }
+        assertTrue(accepted >= 4 && accepted <= 5, "accepted " + accepted);
+        assertFalse(pipeline.awaitIdle(Duration.ofMillis(10)));
+
+        release.countDown();
+        pipeline.close();
+        assertEquals(accepted, pipeline.stats().get(0).getProcessed());
+        assertThrows(IllegalStateException.class, () -> pipeline.submit(1));
+    }
+
+    @Test
+    void failingAndDroppedItemsDoNotReachTheSink() throws InterruptedException {
+        var delivered = new LongAdder();
+        try (var pipeline = StagedPipeline.<Integer>builder()
+                .stage("check", i -> {
+                    if (i % 3 == 0) {
+                        throw new IllegalArgumentException("multiple of three");
+                    }
+                    return i;
+                }, 1)
+                .stage("filter", i -> i % 3 == 1 ? null : i, 1)
+                .sink(i -> delivered.increment())
+                .start()) {
+            for (int i = 0; i < 300; i++) {
+                pipeline.submit(i);
+            }
+            assertTrue(pipeline.awaitIdle(Duration.ofSeconds(10)));
+
+            assertEquals(100, delivered.sum());
+            assertEquals(100, pipeline.stats().get(0).getFailed());
+            assertEquals(200, pipeline.stats().get(1).getProcessed());
+        }
+    }
+
+    @Test
+    void queueWrapsAroundAndReportsFullAndEmpty() {
+        var queue = new BoundedQueue<Integer>(3);
+        assertEquals(4, queue.capacity());
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(queue.offer(i));
+            }
+            assertFalse(queue.offer(4));
+            assertEquals(4, queue.size());
+            var drained = new Object[8];
+            assertEquals(4, queue.drainTo(drained, 8));
+            assertEquals(3, drained[3]);
+            assertNull(queue.poll());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new BoundedQueue<>(0));
+    }
+
+}
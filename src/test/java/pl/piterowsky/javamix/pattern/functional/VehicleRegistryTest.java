@@ -0,0 +1,81 @@
+package pl.piterowsky.javamix.pattern.functional;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodHandles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VehicleRegistryTest {
+
+    @Test
+    void everyTypeAndColorHasOneSharedInstance() {
+        var registry = new VehicleRegistry();
+
+        for (var type : FactoryMethodPattern.FunctionalWay.VehicleType.values()) {
+            for (FactoryMethodPattern.VehicleColor color : FactoryMethodPattern.VehicleColor.values()) {
+                var vehicle = registry.get(type, color);
+                assertSame(vehicle, registry.get(type, color));
+                assertSame(vehicle, registry.get(type.name().toLowerCase(), color));
+                assertEquals(color, vehicle.getColor());
+                assertEquals(FactoryMethodPattern.ImperativeWay.getInstance(
+                        FactoryMethodPattern.ImperativeWay.VehicleType.valueOf(type.name()), color).getClass(),
+                        vehicle.getClass());
+            }
+        }
+        assertEquals(FactoryMethodPattern.Bus.class,
+                registry.get(FactoryMethodPattern.FunctionalWay.VehicleType.BUS, FactoryMethodPattern.VehicleColor.RED)
+                        .getClass());
+    }
+
+    @Test
+    void typesRegisteredByKeyAreBuiltFromTheirConstructor() {
+        var registry = new VehicleRegistry()
+                .register("van", Van.class)
+                .register("tram", Tram.class, MethodHandles.lookup());
+
+        var van = registry.get("van", FactoryMethodPattern.VehicleColor.BLUE);
+        assertEquals(Van.class, van.getClass());
+        assertEquals(FactoryMethodPattern.VehicleColor.BLUE, van.getColor());
+        assertSame(van, registry.get("van", FactoryMethodPattern.VehicleColor.BLUE));
+        assertNotSame(van, registry.create("van", FactoryMethodPattern.VehicleColor.BLUE));
+        assertEquals(Tram.class, registry.get("tram", FactoryMethodPattern.VehicleColor.RED).getClass());
+    }
+
+    @Test
+    void unknownAndUnsuitableTypesAreRejected() {
+        var registry = new VehicleRegistry();
+
+        assertThrows(IllegalArgumentException.class, () -> registry.get("boat", FactoryMethodPattern.VehicleColor.RED));
+        assertThrows(IllegalArgumentException.class, () -> registry.register("car", Van.class));
+        assertThrows(IllegalArgumentException.class, () -> registry.register("bike", Bike.class));
+    }
+
+    static class Van extends FactoryMethodPattern.Vehicle {
+
+        Van(FactoryMethodPattern.VehicleColor color) {
+            super(color);
+        }
+
+    }
+
+    private static class Tram extends FactoryMethodPattern.Vehicle {
+
+        private Tram(FactoryMethodPattern.VehicleColor color) {
+            super(color);
+        }
+
+    }
+
+    static class Bike extends FactoryMethodPattern.Vehicle {
+
+        Bike() {
+            super(FactoryMethodPattern.VehicleColor.RED);
+        }
+
+    }
+
+}
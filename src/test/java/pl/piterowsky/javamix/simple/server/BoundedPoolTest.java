@@ -0,0 +1,33 @@
+package pl.piterowsky.javamix.simple.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class BoundedPoolTest {
+
+    @Test
+    void keepsUpToCapacityAndDiscardsTheRest() {
+        var created = new AtomicInteger();
+        List<Integer> discarded = new ArrayList<>();
+        var pool = new BoundedPool<>(2, created::incrementAndGet, discarded::add);
+
+        var first = pool.borrow();
+        var second = pool.borrow();
+        var third = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertEquals(List.of(3), discarded);
+        assertSame(second, pool.borrow());
+        assertSame(first, pool.borrow());
+        assertEquals(4, pool.borrow());
+    }
+
+}
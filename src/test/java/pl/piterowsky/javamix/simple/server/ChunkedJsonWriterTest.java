@@ -0,0 +1,105 @@
+package pl.piterowsky.javamix.simple.server;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedJsonWriterTest {
+
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void streamsLargeStreamAsChunkedArray() throws Exception {
+        server.createContext("/stream", exchange -> ChunkedJsonWriter.write(exchange, IntStream.range(0, 100_000).boxed()));
+
+        var response = get("/stream");
+
+        assertTrue(response.headers().firstValue("Content-Length").isEmpty());
+        assertEquals("chunked", response.headers().firstValue("Transfer-Encoding").orElse(""));
+        assertEquals(IntStream.range(0, 100_000).mapToObj(String::valueOf).collect(Collectors.joining(",", "[", "]")),
+                response.body());
+    }
+
+    @Test
+    void streamsIterator() throws Exception {
+        server.createContext("/iterator", exchange -> ChunkedJsonWriter.write(exchange, List.of("a", "b\"").iterator()));
+
+        assertEquals("[\"a\",\"b\\\"\"]", get("/iterator").body());
+    }
+
+    @Test
+    void streamsPublisherWithBoundedDemand() throws Exception {
+        server.createContext("/publisher", exchange -> {
+            var publisher = new SubmissionPublisher<Integer>();
+            new Thread(() -> {
+                // Items submitted before the writer subscribes would be dropped
+                while (publisher.getNumberOfSubscribers() == 0) {
+                    Thread.onSpinWait();
+                }
+                // submit blocks once the subscriber stops requesting, so buffering stays bounded
+                IntStream.range(0, 1000).forEach(publisher::submit);
+                publisher.close();
+            }).start();
+            ChunkedJsonWriter.write(exchange, publisher);
+        });
+
+        assertEquals(IntStream.range(0, 1000).mapToObj(String::valueOf).collect(Collectors.joining(",", "[", "]")),
+                get("/publisher").body());
+    }
+
+    @Test
+    void failingSourceCutsTheResponseShort() {
+        server.createContext("/failing", exchange -> ChunkedJsonWriter.write(exchange, failingAfter(3)));
+        server.createContext("/failing-gzip", exchange ->
+                ChunkedJsonWriter.write(exchange, failingAfter(3), ResponseCompression.Encoding.GZIP));
+
+        // Without the terminating chunk the client cannot take the partial array for a complete response
+        assertThrows(IOException.class, () -> get("/failing"));
+        assertThrows(IOException.class, () -> get("/failing-gzip"));
+    }
+
+    private static Iterator<Integer> failingAfter(int elements) {
+        return IntStream.iterate(0, i -> {
+            if (i + 1 == elements) {
+                throw new IllegalStateException("Source failed");
+            }
+            return i + 1;
+        }).iterator();
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        var uri = URI.create("http://localhost:" + server.getAddress().getPort() + path);
+        return HttpClient.newHttpClient().send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+}
@@ -0,0 +1,121 @@
+package pl.piterowsky.javamix.simple.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonSerializerTest {
+
+    @Test
+    void serializesPojoLikeTheHelloEndpoint() {
+        var pojo = new SimplePojo();
+        pojo.setHello("Hello World");
+        pojo.setAge(12);
+
+        assertEquals("{\"hello\":\"Hello World\",\"age\":12}", JsonSerializer.toJson(pojo));
+    }
+
+    @Test
+    void escapesStringsAndEncodesUtf8() {
+        var text = "quote\" backslash\\ newline\n tab\t bell\u0007 za\u017c\u00f3\u0142\u0107 \ud83d\ude00";
+
+        var expected = "\"quote\\\" backslash\\\\ newline\\n tab\\t bell\\u0007 za\u017c\u00f3\u0142\u0107 \ud83d\ude00\"";
+        try (var out = JsonSerializer.serialize(text)) {
+            assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+            assertEquals(expected.getBytes(StandardCharsets.UTF_8).length, out.size());
+        }
+    }
+
+    @Test
+    void serializesNestedObjectsCollectionsMapsAndArrays() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("list", List.of(1, 2.5, "x"));
+        map.put("ints", new int[]{1, -2, Integer.MIN_VALUE});
+        map.put("objects", new Object[]{null, true, 'c'});
+        map.put("nested", new Nested(Long.MIN_VALUE, false, HttpMethod.POST, Optional.of(new Nested(0, true, null, Optional.empty()))));
+
+        assertEquals("{\"list\":[1,2.5,\"x\"],"
+                + "\"ints\":[1,-2,-2147483648],"
+                + "\"objects\":[null,true,\"c\"],"
+                + "\"nested\":{\"id\":-9223372036854775808,\"flag\":false,\"method\":\"POST\","
+                + "\"child\":{\"id\":0,\"flag\":true,\"method\":null,\"child\":null}}}", JsonSerializer.toJson(map));
+    }
+
+    @Test
+    void writesNonFiniteNumbersAsNull() {
+        assertEquals("[null,null,1.0E10]", JsonSerializer.toJson(Arrays.asList(Double.NaN, Float.POSITIVE_INFINITY, 1e10)));
+    }
+
+    @Test
+    void writesFloatsWithoutWideningThem() {
+        assertEquals("[0.1,null]", JsonSerializer.toJson(Arrays.asList(0.1f, Float.NaN)));
+        assertEquals("{\"ratio\":0.1,\"ratios\":[0.1,null]}",
+                JsonSerializer.toJson(new Ratios(0.1f, new float[]{0.1f, Float.NaN})));
+    }
+
+    @Test
+    void failsOnCycles() {
+        List<Object> cycle = new java.util.ArrayList<>();
+        cycle.add(cycle);
+
+        assertThrows(IllegalStateException.class, () -> JsonSerializer.toJson(cycle));
+    }
+
+    @Test
+    void reusesClosedOutputs() {
+        var first = JsonSerializer.serialize("a long enough value");
+        first.close();
+        first.close();
+        var second = JsonSerializer.serialize(1);
+        var third = JsonSerializer.serialize(2);
+
+        assertSame(first, second);
+        assertNotSame(second, third);
+        assertEquals("1", second.toString());
+        second.close();
+        third.close();
+    }
+
+    private static class Ratios {
+
+        private final float ratio;
+        private final float[] ratios;
+
+        Ratios(float ratio, float[] ratios) {
+            this.ratio = ratio;
+            this.ratios = ratios;
+        }
+
+    }
+
+    private static class Nested {
+
+        private static final String IGNORED = "static";
+
+        private final long id;
+        private final boolean flag;
+        private final HttpMethod method;
+        private final Optional<Nested> child;
+        private transient String cached = "transient";
+
+        Nested(long id, boolean flag, HttpMethod method, Optional<Nested> child) {
+            this.id = id;
+            this.flag = flag;
+            this.method = method;
+            this.child = child;
+        }
+
+    }
+
+}
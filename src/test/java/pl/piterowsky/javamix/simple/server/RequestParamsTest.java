@@ -0,0 +1,63 @@
+package pl.piterowsky.javamix.simple.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestParamsTest {
+
+    @Test
+    void parsesMultipleRepeatedAndEmptyParams() {
+        var params = RequestParams.of("name=World&tag=a&&tag=b&flag&empty=");
+
+        assertEquals("World", params.get("name"));
+        assertEquals("a", params.get("tag"));
+        assertEquals(List.of("a", "b"), params.getAll("tag"));
+        assertEquals("", params.get("flag"));
+        assertEquals("", params.get("empty"));
+        assertTrue(params.containsKey("flag"));
+        assertNull(params.get("missing"));
+        assertEquals("fallback", params.getOrDefault("missing", "fallback"));
+        assertEquals(4, params.size());
+    }
+
+    @Test
+    void percentDecodesKeysAndValues() {
+        // Raw queries arrive from HttpServer with one char per request byte
+        var rawQuery = new String("first%20name=Za%C5%BC%C3%B3%C5%82%C4%87+go%C5%9Bl%C4%99&q=a%2Bb%3Dc&bad=100%&x=%zz"
+                .getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        var params = RequestParams.of(rawQuery);
+
+        assertEquals("Za\u017c\u00f3\u0142\u0107 go\u015bl\u0119", params.get("first name"));
+        assertEquals("a+b=c", params.get("q"));
+        assertEquals("100%", params.get("bad"));
+        assertEquals("%zz", params.get("x"));
+    }
+
+    @Test
+    void parsesFormBodiesAndAppliesOverrides() {
+        var body = "user=j%C3%B3zef&id=1&extra".getBytes(StandardCharsets.US_ASCII);
+        var params = RequestParams.of(body, body.length - "&extra".length());
+        params.setOverrides(Map.of("id", "42"));
+
+        assertEquals("j\u00f3zef", params.get("user"));
+        assertEquals("42", params.get("id"));
+        assertFalse(params.containsKey("extra"));
+        assertEquals(Map.of("user", "j\u00f3zef", "id", "42"), params);
+    }
+
+    @Test
+    void emptyOrMissingQuery() {
+        assertTrue(RequestParams.of((String) null).isEmpty());
+        assertTrue(RequestParams.of("").isEmpty());
+        assertTrue(RequestParams.of("&&").isEmpty());
+    }
+
+}
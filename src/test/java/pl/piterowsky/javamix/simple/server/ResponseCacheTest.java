@@ -0,0 +1,173 @@
+package pl.piterowsky.javamix.simple.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheTest {
+
+    @Test
+    void keyIgnoresParameterOrderButNotRepeatedValues() {
+        assertEquals(ResponseCache.key("/hello", RequestParams.of("a=1&b=2")),
+                ResponseCache.key("/hello", RequestParams.of("b=2&a=%31")));
+        assertNotEquals(ResponseCache.key("/hello", RequestParams.of("a=1&a=2")),
+                ResponseCache.key("/hello", RequestParams.of("a=2&a=1")));
+        assertNotEquals(ResponseCache.key("/hello", RequestParams.of("a=1%262")),
+                ResponseCache.key("/hello", RequestParams.of("a=1&2")));
+    }
+
+    @Test
+    void servesHitsAndCountsMisses() {
+        var cache = new ResponseCache(10, 1024, Duration.ofMinutes(1));
+        var loads = new AtomicInteger();
+        Supplier<byte[]> loader = () -> body("call " + loads.incrementAndGet());
+
+        var first = cache.get("k", loader);
+        var second = cache.get("k", loader);
+
+        assertSame(first, second);
+        assertArrayEquals(body("call 1"), second.body());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().getHits());
+        assertEquals(1, cache.stats().getMisses());
+    }
+
+    @Test
+    void expiresAfterTtl() throws InterruptedException {
+        var cache = new ResponseCache(10, 1024, Duration.ofMillis(20));
+        cache.get("k", () -> body("old"));
+
+        Thread.sleep(40);
+
+        assertArrayEquals(body("new"), cache.get("k", () -> body("new")).body());
+        assertEquals(1, cache.stats().getExpirations());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverBudget() throws InterruptedException {
+        var cache = new ResponseCache(2, 1024, Duration.ofMinutes(1));
+        cache.get("a", () -> body("a"));
+        Thread.sleep(1);
+        cache.get("b", () -> body("b"));
+        Thread.sleep(1);
+        cache.get("a", () -> body("reloaded"));
+        cache.get("c", () -> body("c"));
+
+        assertEquals(1, cache.stats().getEvictions());
+        assertArrayEquals(body("a"), cache.get("a", () -> body("reloaded")).body());
+        assertArrayEquals(body("b2"), cache.get("b", () -> body("b2")).body());
+
+        var bytesBudget = new ResponseCache(100, 10, Duration.ofMinutes(1));
+        bytesBudget.get("x", () -> new byte[6]);
+        bytesBudget.get("y", () -> new byte[6]);
+        assertEquals(1, bytesBudget.stats().getEntries());
+        assertEquals(6, bytesBudget.stats().getBytes());
+    }
+
+    @Test
+    void invalidatedEntriesAreNotEvictedAgain() {
+        var cache = new ResponseCache(2, 1024, Duration.ofMinutes(1));
+        for (int i = 0; i < 100; i++) {
+            cache.get("k" + i, () -> body("gone"));
+            cache.invalidateAll();
+        }
+        cache.get("a", () -> body("a"));
+        cache.get("b", () -> body("b"));
+        cache.get("c", () -> body("c"));
+
+        assertEquals(1, cache.stats().getEvictions());
+        assertEquals(2, cache.stats().getEntries());
+        assertArrayEquals(body("c"), cache.get("c", () -> body("c2")).body());
+    }
+
+    @Test
+    void coalescesConcurrentMisses() throws Exception {
+        var cache = new ResponseCache(10, 1024, Duration.ofMinutes(1));
+        var loads = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future[4];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(() -> cache.get("k", () -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return body("once");
+                }));
+            }
+            while (cache.stats().getMisses() + cache.stats().getCoalesced() + cache.stats().getHits() < futures.length) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        var cache = new ResponseCache(10, 1024, Duration.ofMinutes(1));
+
+        assertThrows(IllegalStateException.class, () -> cache.get("k", () -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertArrayEquals(body("ok"), cache.get("k", () -> body("ok")).body());
+    }
+
+    @Test
+    void matchesIfNoneMatchHeaders() {
+        var etag = new ResponseCache(1, 1024, Duration.ofMinutes(1)).get("k", () -> body("x")).etag();
+
+        assertTrue(ResponseCache.matches(etag, etag));
+        assertTrue(ResponseCache.matches("\"other\", W/" + etag, etag));
+        assertTrue(ResponseCache.matches("*", etag));
+        assertFalse(ResponseCache.matches("\"other\"", etag));
+        assertFalse(ResponseCache.matches(null, etag));
+    }
+
+    @Test
+    void compressedVariantsAreBuiltOnceAndCounted() {
+        var cache = new ResponseCache(10, 1 << 20, Duration.ofMinutes(1));
+        var entry = cache.get("k", () -> body("{\"value\":\"" + "abc".repeat(1000) + "\"}"));
+
+        var gzip = cache.encoded(entry, ResponseCompression.Encoding.GZIP, 0);
+
+        assertSame(gzip, cache.encoded(entry, ResponseCompression.Encoding.GZIP, 0));
+        assertTrue(gzip.length < entry.body().length);
+        assertEquals(entry.body().length + gzip.length, cache.stats().getBytes());
+        assertNotEquals(entry.etag(), entry.etag(ResponseCompression.Encoding.GZIP));
+        assertNull(cache.encoded(entry, ResponseCompression.Encoding.DEFLATE, entry.body().length + 1));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.stats().getBytes());
+    }
+
+    private static byte[] body(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
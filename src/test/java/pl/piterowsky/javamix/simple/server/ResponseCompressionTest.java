@@ -0,0 +1,67 @@
+package pl.piterowsky.javamix.simple.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCompressionTest {
+
+    private static final byte[] JSON = ("[" + "{\"hello\":\"Hello World\",\"age\":12},".repeat(200) + "null]")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void negotiatesByQualityWithGzipWinningTies() {
+        assertEquals(ResponseCompression.Encoding.GZIP, ResponseCompression.negotiate("gzip, deflate, br"));
+        assertEquals(ResponseCompression.Encoding.DEFLATE, ResponseCompression.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ResponseCompression.Encoding.GZIP, ResponseCompression.negotiate("*"));
+        assertEquals(ResponseCompression.Encoding.DEFLATE, ResponseCompression.negotiate("gzip;q=0, *;q=0.1"));
+        assertNull(ResponseCompression.negotiate("br, identity"));
+        assertNull(ResponseCompression.negotiate(null));
+    }
+
+    @Test
+    void compressedBodiesInflateBack() throws IOException {
+        // Twice on the same thread, the pooled deflaters must be reset between responses
+        for (int i = 0; i < 2; i++) {
+            var gzip = ResponseCompression.compress(JSON, 0, JSON.length, ResponseCompression.Encoding.GZIP);
+            var deflate = ResponseCompression.compress(JSON, 0, JSON.length, ResponseCompression.Encoding.DEFLATE);
+
+            assertTrue(gzip.length < JSON.length / 4);
+            assertArrayEquals(JSON, readAll(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+            assertArrayEquals(JSON, readAll(new InflaterInputStream(new ByteArrayInputStream(deflate))));
+        }
+    }
+
+    @Test
+    void streamsInflateBack() throws IOException {
+        for (ResponseCompression.Encoding encoding : ResponseCompression.Encoding.values()) {
+            var sink = new ByteArrayOutputStream();
+            try (var out = ResponseCompression.compressing(sink, encoding)) {
+                out.write(JSON, 0, 100);
+                out.flush();
+                out.write(JSON, 100, JSON.length - 100);
+            }
+            var in = new ByteArrayInputStream(sink.toByteArray());
+            assertArrayEquals(JSON, readAll(encoding == ResponseCompression.Encoding.GZIP
+                    ? new GZIPInputStream(in) : new InflaterInputStream(in)));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package pl.piterowsky.javamix.simple.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouterTest {
+
+    @Test
+    void matchesStaticParamAndWildcardRoutes() {
+        var router = new Router<String>();
+        router.add(HttpMethod.GET, "/", "root");
+        router.add(HttpMethod.GET, "/users/{id}", "user");
+        router.add(HttpMethod.GET, "/users/{id}/posts/{postId}", "post");
+        router.add(HttpMethod.GET, "/static/{path*}", "static");
+
+        assertEquals("root", router.match(HttpMethod.GET, "/").handler());
+        var user = router.match(HttpMethod.GET, "/users/42/");
+        assertEquals("user", user.handler());
+        assertEquals(Map.of("id", "42"), user.pathParams());
+        assertEquals(Map.of("id", "7", "postId", "9"), router.match(HttpMethod.GET, "/users/7/posts/9").pathParams());
+        assertEquals(Map.of("path", "css/site.css"), router.match(HttpMethod.GET, "/static/css/site.css").pathParams());
+        assertEquals(Map.of("path", ""), router.match(HttpMethod.GET, "/static/").pathParams());
+    }
+
+    @Test
+    void prefersStaticSegmentsAndBacktracksPerMethod() {
+        var router = new Router<String>();
+        router.add(HttpMethod.GET, "/users/{id}", "byId");
+        router.add(HttpMethod.POST, "/users/new", "create");
+        router.add(HttpMethod.GET, "/users/*", "any");
+
+        assertEquals("create", router.match(HttpMethod.POST, "/users/new").handler());
+        assertEquals("byId", router.match(HttpMethod.GET, "/users/new").handler());
+        assertEquals("any", router.match(HttpMethod.GET, "/users/1/details").handler());
+    }
+
+    @Test
+    void distinguishesMissingPathFromWrongMethod() {
+        var router = new Router<String>();
+        router.add(HttpMethod.POST, "/orders", "create");
+
+        var wrongMethod = router.match(HttpMethod.GET, "/orders");
+        assertFalse(wrongMethod.isFound());
+        assertTrue(wrongMethod.isMethodNotAllowed());
+
+        var missing = router.match(HttpMethod.GET, "/order");
+        assertFalse(missing.isFound());
+        assertFalse(missing.isMethodNotAllowed());
+    }
+
+    @Test
+    void rejectsConflictingAndMalformedRoutes() {
+        var router = new Router<String>();
+        router.add(HttpMethod.GET, "/users/{id}", "first");
+
+        assertThrows(IllegalStateException.class, () -> router.add(HttpMethod.GET, "/users/{name}", "second"));
+        assertThrows(IllegalArgumentException.class, () -> router.add(HttpMethod.GET, "/files/*/meta", "wildcard"));
+        assertThrows(IllegalArgumentException.class, () -> router.add(HttpMethod.GET, "users", "relative"));
+    }
+
+    @Test
+    void resolvesEachOfThousandRoutes() {
+        var methods = HttpMethod.values();
+        var router = new Router<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            router.add(methods[i % 4], "/api/v" + (i % 3) + "/resource" + i + "/{id}/items/" + (i % 7), i);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            var match = router.match(methods[i % 4], "/api/v" + (i % 3) + "/resource" + i + "/" + i + "/items/" + (i % 7));
+            assertEquals(i, match.handler());
+            assertEquals(Map.of("id", String.valueOf(i)), match.pathParams());
+            assertTrue(router.match(methods[(i + 1) % 4], "/api/v" + (i % 3) + "/resource" + i + "/1/items/" + (i % 7))
+                    .isMethodNotAllowed());
+        }
+    }
+
+}